@@ -0,0 +1,66 @@
+package vermilingua.benchmark;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vermilingua.packaging.Util;
+
+/**
+ * Archiving a WOA-sized resource tree as tar.gz
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+
+	@Param({ "100", "1000" })
+	int fileCount;
+
+	@Param({ "1024", "65536" })
+	int fileSize;
+
+	@Param({ "1", "4" })
+	int threads;
+
+	private Path _root;
+	private Path _source;
+	private Path _archive;
+
+	@Setup(Level.Trial)
+	public void createInputs() {
+		_root = Fixtures.temporaryDirectory();
+		_source = _root.resolve( "App.woa" );
+		_archive = _root.resolve( "App.tar.gz" );
+
+		Fixtures.resourceTree( _source, fileCount, fileSize, 4 );
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteInputs() {
+		Util.deleteRecursively( _root );
+	}
+
+	@Benchmark
+	public void createTarGz() {
+		Util.createTarGz( _source, _archive, threads, Deflater.DEFAULT_COMPRESSION );
+	}
+}
@@ -0,0 +1,87 @@
+package vermilingua.benchmark;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vermilingua.packaging.ComponentFlattener;
+import vermilingua.packaging.Util;
+
+/**
+ * Copying resource folders and flattening component folders into a WOA
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectoryCopyBenchmark {
+
+	@Param({ "100", "1000" })
+	int fileCount;
+
+	@Param({ "1024", "65536" })
+	int fileSize;
+
+	private Path _root;
+	private Path _resources;
+	private Path _components;
+	private Path _destination;
+
+	@Setup(Level.Trial)
+	public void createInputs() {
+		_root = Fixtures.temporaryDirectory();
+		_resources = _root.resolve( "woresources" );
+		_components = _root.resolve( "components" );
+		_destination = _root.resolve( "destination" );
+
+		Fixtures.resourceTree( _resources, fileCount, fileSize, 4 );
+
+		// Each component consists of four files
+		Fixtures.componentTree( _components, fileCount / 4, fileSize );
+	}
+
+	@Setup(Level.Invocation)
+	public void deleteDestination() {
+		Util.deleteRecursively( _destination );
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteInputs() {
+		Util.deleteRecursively( _root );
+	}
+
+	@Benchmark
+	public void copyContentsOfDirectoryToDirectory() {
+		Util.copyContentsOfDirectoryToDirectory( _resources, _destination );
+	}
+
+	@Benchmark
+	public void copyContentsOfDirectoryToDirectoryFlatten() {
+		Util.copyContentsOfDirectoryToDirectoryFlatten( _components, _destination, List.of( "wo" ), List.of( "lproj" ) );
+	}
+
+	/**
+	 * Only works out the flattened destinations (as application packaging does when planning), without copying anything
+	 */
+	@Benchmark
+	public ComponentFlattener.Flattening flattenComponents() {
+		return ComponentFlattener.flatten( _components, _destination, List.of( "wo" ), List.of( "lproj" ) );
+	}
+}
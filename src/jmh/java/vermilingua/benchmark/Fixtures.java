@@ -0,0 +1,174 @@
+package vermilingua.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import vermilingua.packaging.Util;
+
+/**
+ * Generates the synthetic inputs the benchmarks work on. Content is generated from a fixed seed, so every run (and every release) benchmarks the same input.
+ */
+
+public class Fixtures {
+
+	/**
+	 * Words that generated content is made of. Gives content that compresses roughly like source code and markup does.
+	 */
+	private static final String[] WORDS = { "<div>", "</div>", "<wo:", "String", "public", "return", "value", "binding", "=", ";", "{", "}", "\n", "\t", "WOComponent", "name", "id", "class" };
+
+	/**
+	 * Number of files placed in each directory of generated trees before starting a new one
+	 */
+	private static final int FILES_PER_DIRECTORY = 20;
+
+	/**
+	 * @return [size] bytes of text-like content, generated from [seed]
+	 */
+	public static byte[] content( final int size, final long seed ) {
+		final Random random = new Random( seed );
+		final StringBuilder b = new StringBuilder( size + 16 );
+
+		while( b.length() < size ) {
+			b.append( WORDS[random.nextInt( WORDS.length )] ).append( ' ' );
+		}
+
+		final byte[] bytes = new byte[size];
+		System.arraycopy( b.toString().getBytes( StandardCharsets.US_ASCII ), 0, bytes, 0, size );
+		return bytes;
+	}
+
+	/**
+	 * Writes a tree of [fileCount] files of [fileSize] bytes to [root], nested [depth] directories deep
+	 */
+	public static void resourceTree( final Path root, final int fileCount, final int fileSize, final int depth ) {
+		final List<String> names = resourceNames( "", fileCount, depth );
+
+		for( int i = 0; i < names.size(); i++ ) {
+			write( root.resolve( names.get( i ) ), content( fileSize, i ) );
+		}
+	}
+
+	/**
+	 * Writes a components folder to [root], containing [componentCount] components (.wo bundles with html, wod and woo files along with an .api file)
+	 * spread over nested group folders. Every tenth component is localized, placed in a nested folder within English.lproj and Icelandic.lproj.
+	 */
+	public static void componentTree( final Path root, final int componentCount, final int fileSize ) {
+		for( int i = 0; i < componentCount; i++ ) {
+			final String name = "Component" + i;
+			final String group = "Group" + (i % 7) + "/Subgroup" + (i % 3) + "/";
+
+			if( i % 10 == 0 ) {
+				for( final String localization : List.of( "English.lproj", "Icelandic.lproj" ) ) {
+					component( root.resolve( group + localization + "/Nested" + (i % 4) ), name, fileSize, i );
+				}
+			}
+			else {
+				component( root.resolve( group ), name, fileSize, i );
+			}
+		}
+	}
+
+	private static void component( final Path folder, final String name, final int fileSize, final long seed ) {
+		final Path bundle = folder.resolve( name + ".wo" );
+		write( bundle.resolve( name + ".html" ), content( fileSize, seed ) );
+		write( bundle.resolve( name + ".wod" ), content( fileSize / 4, seed + 1 ) );
+		write( bundle.resolve( name + ".woo" ), content( 64, seed + 2 ) );
+		write( folder.resolve( name + ".api" ), content( 128, seed + 3 ) );
+	}
+
+	/**
+	 * Writes a jar to [jarPath] containing [fileCount] class-like entries of [fileSize] bytes, and if [webServerResources] is set,
+	 * the same number of entries in a WebServerResources folder (like a framework jar)
+	 */
+	public static void jar( final Path jarPath, final int fileCount, final int fileSize, final boolean webServerResources ) {
+		final List<String> names = new ArrayList<>();
+
+		for( int i = 0; i < fileCount; i++ ) {
+			names.add( "com/example/package" + (i / FILES_PER_DIRECTORY) + "/Class" + i + ".class" );
+		}
+
+		names.addAll( resourceNames( "Resources/", Math.max( 1, fileCount / 10 ), 2 ) );
+
+		if( webServerResources ) {
+			names.addAll( resourceNames( "WebServerResources/", fileCount, 3 ) );
+		}
+
+		Util.createParentDirectories( jarPath );
+
+		try( final OutputStream out = Files.newOutputStream( jarPath ); final JarOutputStream jarStream = new JarOutputStream( out ) ) {
+			final Set<String> directoryNames = new HashSet<>();
+
+			for( int entryIndex = 0; entryIndex < names.size(); entryIndex++ ) {
+				final String name = names.get( entryIndex );
+
+				// jar files built by Maven contain entries for directories as well
+				for( int i = name.indexOf( '/' ); i != -1; i = name.indexOf( '/', i + 1 ) ) {
+					final String directoryName = name.substring( 0, i + 1 );
+
+					if( directoryNames.add( directoryName ) ) {
+						jarStream.putNextEntry( new JarEntry( directoryName ) );
+						jarStream.closeEntry();
+					}
+				}
+
+				jarStream.putNextEntry( new JarEntry( name ) );
+				jarStream.write( content( fileSize, entryIndex ) );
+				jarStream.closeEntry();
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return Paths of [fileCount] files (prefixed with [prefix]), nested [depth] directories deep
+	 */
+	private static List<String> resourceNames( final String prefix, final int fileCount, final int depth ) {
+		final String[] extensions = { ".css", ".js", ".png", ".html", ".strings" };
+		final List<String> names = new ArrayList<>();
+
+		for( int i = 0; i < fileCount; i++ ) {
+			final StringBuilder path = new StringBuilder( prefix );
+			int directory = i / FILES_PER_DIRECTORY;
+
+			for( int level = 0; level < depth; level++ ) {
+				path.append( "dir" ).append( directory % 5 ).append( '/' );
+				directory /= 5;
+			}
+
+			path.append( "file" ).append( i ).append( extensions[i % extensions.length] );
+			names.add( path.toString() );
+		}
+
+		return names;
+	}
+
+	private static void write( final Path path, final byte[] bytes ) {
+		Util.createParentDirectories( path );
+		Util.writeBytesToPath( bytes, path );
+	}
+
+	/**
+	 * @return A new temporary directory for a benchmark's files
+	 */
+	public static Path temporaryDirectory() {
+		try {
+			return Files.createTempDirectory( "vermilingua-benchmark" );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+}
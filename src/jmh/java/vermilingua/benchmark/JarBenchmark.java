@@ -0,0 +1,121 @@
+package vermilingua.benchmark;
+
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vermilingua.packaging.JarRewriter;
+import vermilingua.packaging.Util;
+
+/**
+ * Reading webserver resources from framework jars, and rewriting a framework's jar with it's resources added
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JarBenchmark {
+
+	@Param({ "100", "1000" })
+	int fileCount;
+
+	@Param({ "1024", "65536" })
+	int fileSize;
+
+	private Path _root;
+
+	/**
+	 * A framework jar, containing webserver resources
+	 */
+	private Path _frameworkJar;
+
+	/**
+	 * A plain library jar, without webserver resources
+	 */
+	private Path _libraryJar;
+
+	/**
+	 * Resources to add to the framework jar when rewriting it
+	 */
+	private Path _resources;
+
+	/**
+	 * The copy of the framework jar that gets rewritten
+	 */
+	private Path _rewrittenJar;
+
+	private Path _destination;
+
+	@Setup(Level.Trial)
+	public void createInputs() {
+		_root = Fixtures.temporaryDirectory();
+		_frameworkJar = _root.resolve( "framework.jar" );
+		_libraryJar = _root.resolve( "library.jar" );
+		_resources = _root.resolve( "resources" );
+		_rewrittenJar = _root.resolve( "rewritten.jar" );
+		_destination = _root.resolve( "destination" );
+
+		Fixtures.jar( _frameworkJar, fileCount, fileSize, true );
+		Fixtures.jar( _libraryJar, fileCount, fileSize, false );
+		Fixtures.resourceTree( _resources, fileCount, fileSize, 3 );
+	}
+
+	@Setup(Level.Invocation)
+	public void resetOutputs() {
+		Util.deleteRecursively( _destination );
+		Util.copyFile( _frameworkJar, _rewrittenJar, StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteInputs() {
+		Util.deleteRecursively( _root );
+	}
+
+	@Benchmark
+	public boolean jarContainsNonEmptyWebServerResourcesDirectoryInRoot_framework() {
+		return Util.jarContainsNonEmptyWebServerResourcesDirectoryInRoot( _frameworkJar.toFile() );
+	}
+
+	@Benchmark
+	public boolean jarContainsNonEmptyWebServerResourcesDirectoryInRoot_library() {
+		return Util.jarContainsNonEmptyWebServerResourcesDirectoryInRoot( _libraryJar.toFile() );
+	}
+
+	@Benchmark
+	public List<Path> copyFolderFromJarToPath_framework() {
+		return Util.copyFolderFromJarToPath( "WebServerResources", _frameworkJar, _destination );
+	}
+
+	@Benchmark
+	public List<Path> copyFolderFromJarToPath_library() {
+		return Util.copyFolderFromJarToPath( "WebServerResources", _libraryJar, _destination );
+	}
+
+	/**
+	 * Adds a folder of webserver resources to a framework jar in a single pass, as packaging a framework does
+	 */
+	@Benchmark
+	public void jarRewriter_addContentsOfDirectory() {
+		final JarRewriter jarRewriter = new JarRewriter( _rewrittenJar );
+		jarRewriter.addContentsOfDirectory( _resources, "WebServerResources" );
+		jarRewriter.write();
+	}
+}
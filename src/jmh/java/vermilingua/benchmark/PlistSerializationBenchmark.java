@@ -0,0 +1,70 @@
+package vermilingua.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vermilingua.packaging.PlistSerialization;
+
+/**
+ * Serializing property lists, from the size of a typical Info.plist up
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlistSerializationBenchmark {
+
+	/**
+	 * Number of keys in the top level dictionary
+	 */
+	@Param({ "20", "1000" })
+	int entryCount;
+
+	private Map<String, Object> _plist;
+
+	@Setup(Level.Trial)
+	public void createPlist() {
+		_plist = new LinkedHashMap<>();
+
+		for( int i = 0; i < entryCount; i++ ) {
+			final Object value = switch( i % 4 ) {
+				case 0 -> "Value " + i;
+				case 1 -> i % 8 == 1;
+				case 2 -> List.of( "alpha" + i, "beta" + i, "gamma" + i );
+				default -> {
+					final Map<String, Object> nested = new LinkedHashMap<>();
+					nested.put( "name", "Nested " + i );
+					nested.put( "enabled", Boolean.TRUE );
+					nested.put( "values", new ArrayList<>( List.of( "one", "two", "three" ) ) );
+					yield nested;
+				}
+			};
+
+			_plist.put( "Key" + i, value );
+		}
+	}
+
+	@Benchmark
+	public String serialize() {
+		return new PlistSerialization( _plist ).toString();
+	}
+}
@@ -1,12 +1,22 @@
 package vermilingua.maven;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Properties;
+import java.util.function.BiConsumer;
 
 import javax.inject.Inject;
 
 import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -17,12 +27,26 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 
+import vermilingua.packaging.ArchiveFormat;
+import vermilingua.packaging.ArchiveWriter;
 import vermilingua.packaging.BuildProperties;
+import vermilingua.packaging.CDSTrainer;
+import vermilingua.packaging.DeltaArchive;
+import vermilingua.packaging.Dependency;
+import vermilingua.packaging.ExtractionStore;
+import vermilingua.packaging.JarCache;
+import vermilingua.packaging.LinkStrategy;
+import vermilingua.packaging.OCIImage;
 import vermilingua.packaging.PackageWOApplication;
 import vermilingua.packaging.PackageWOApplication.WOA;
 import vermilingua.packaging.PackageWOFramework;
+import vermilingua.packaging.PackagingOptions;
+import vermilingua.packaging.PackagingReport;
+import vermilingua.packaging.PackagingReport.Section;
+import vermilingua.packaging.PackagingReport.Stage;
 import vermilingua.packaging.ProjectUtil;
 import vermilingua.packaging.SourceProject;
+import vermilingua.packaging.UpToDateCheck;
 import vermilingua.packaging.Util;
 
 @Mojo(name = "package", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME, threadSafe = true)
@@ -34,12 +58,20 @@ public class PackageMojo extends AbstractMojo {
 
 	private static final String DEFAULT_WEB_SERVER_RESOURCES_PATH = "src/main/webserver-resources";
 
+	private static final Instant MINIMUM_OUTPUT_TIMESTAMP = Instant.parse( "1980-01-01T00:00:02Z" );
+
 	/**
 	 * The maven project. This gets injected by Maven during the build
 	 */
 	@Parameter(property = "project", required = true, readonly = true)
 	MavenProject mavenProject;
 
+	/**
+	 * The build session, shared by every module in the reactor
+	 */
+	@Parameter(defaultValue = "${session}", required = true, readonly = true)
+	MavenSession mavenSession;
+
 	/**
 	 * Old method of declaring the  woresources folder name
 	 */
@@ -73,12 +105,235 @@ public class PackageMojo extends AbstractMojo {
 	boolean performSplit;
 
 	/**
-	 * Creates tar.gz archives of the build products and attaches them as Maven artifacts,
+	 * How files get into the split webserver resources folder. One of 'copy', 'hardlink', 'reflink', 'auto' (hard link if possible, otherwise copy)
+	 * or 'move' (moves the folders out of the WOA, leaving it without webserver resources)
+	 */
+	@Parameter(property = "splitMode", required = false, defaultValue = "auto")
+	String splitMode;
+
+	/**
+	 * Creates archives of the build products (tar.gz by default, see archiveFormat) and attaches them as Maven artifacts,
 	 * making them available to mvn install and mvn deploy.
 	 */
 	@Parameter(property = "createArchives", required = false)
 	boolean createArchives;
 
+	/**
+	 * Only copy files that changed since the last build into the WOA, and delete files from the WOA that no longer have a source.
+	 * Keeps track of the WOA's contents using a manifest stored in the WOA root.
+	 */
+	@Parameter(property = "incremental", required = false)
+	boolean incremental;
+
+	/**
+	 * When building incrementally, compare content hashes of sources whose modification time has changed before copying them again.
+	 * Useful on CI, where a fresh checkout touches every file.
+	 */
+	@Parameter(property = "incrementalChecksums", required = false)
+	boolean incrementalChecksums;
+
+	/**
+	 * How dependency jars are placed in the WOA. One of 'copy', 'hardlink', 'reflink' (copy-on-write clone) or 'auto' (hardlink if possible, otherwise copy)
+	 */
+	@Parameter(property = "linkStrategy", required = false, defaultValue = "copy")
+	String linkStrategy;
+
+	/**
+	 * Number of threads used for copying, extracting and writing files into the WOA. The default of 1 performs all the work in sequence.
+	 */
+	@Parameter(property = "packagingThreads", required = false, defaultValue = "1")
+	int packagingThreads;
+
+	/**
+	 * Format of the archives created when createArchives is set. One of 'tar.gz', 'tar.zst', 'tar' or 'zip'
+	 */
+	@Parameter(property = "archiveFormat", required = false, defaultValue = "tar.gz")
+	String archiveFormat;
+
+	/**
+	 * Number of threads used to compress archives when createArchives is set. With more than one, the archive is compressed in independent blocks in parallel.
+	 */
+	@Parameter(property = "compressionThreads", required = false, defaultValue = "1")
+	int compressionThreads;
+
+	/**
+	 * Compression level used for archives when createArchives is set. 0-9 for tar.gz and zip, 1-22 for tar.zst (ignored for tar). -1 (the default) uses the compressor's default.
+	 */
+	@Parameter(property = "compressionLevel", required = false, defaultValue = "-1")
+	int compressionLevel;
+
+	/**
+	 * Enables long distance matching when creating tar.zst archives. Improves compression of large archives with repeated content, at the cost of memory.
+	 */
+	@Parameter(property = "compressionLongRange", required = false)
+	boolean compressionLongRange;
+
+	/**
+	 * Creates content-hashed copies of the application's and frameworks' webserver resources (app.css -> app.3f9c2a1b.css),
+	 * along with a manifest (WebServerResources/fingerprints.json) mapping original names to hashed names.
+	 */
+	@Parameter(property = "fingerprintWebServerResources", required = false)
+	boolean fingerprintWebServerResources;
+
+	/**
+	 * Writes gzip compressed variants (app.css.gz) of text-based webserver resources (css, js, html, svg, json etc.), for web servers that serve precompressed files (like nginx with gzip_static)
+	 */
+	@Parameter(property = "precompressWebServerResources", required = false)
+	boolean precompressWebServerResources;
+
+	/**
+	 * Size (in bytes) below which webserver resources aren't precompressed
+	 */
+	@Parameter(property = "precompressMinimumSize", required = false, defaultValue = "1024")
+	long precompressMinimumSize;
+
+	/**
+	 * Generates a launcher jar (Contents/Resources/Java/launcher.jar) whose manifest references every jar on the application's classpath,
+	 * and makes it the only entry in classpath.txt. Keeps the application's command line short.
+	 */
+	@Parameter(property = "launcherJar", required = false)
+	boolean launcherJar;
+
+	/**
+	 * Pre-resolves the JVM options and classpath into JVM argument files (jvm-options.args and classpath.args) in the WOA root,
+	 * and generates a launch script that passes them on to the JVM without starting any other processes.
+	 */
+	@Parameter(property = "argFileLaunch", required = false)
+	boolean argFileLaunch;
+
+	/**
+	 * Writes an index of resources (name, localization, bundle, size and CRC-32) to Contents/Resources/resource-index.tsv in applications
+	 * (covering the application and it's frameworks) or Resources/resource-index.tsv in framework jars, and warns about resources that shadow each other.
+	 */
+	@Parameter(property = "resourceIndex", required = false)
+	boolean resourceIndex;
+
+	/**
+	 * Fails the build when multiple files in the components folder flatten to the same destination (for example two components with the same name in different group folders).
+	 * Otherwise, a warning listing every collision is logged and the last source in path order wins.
+	 */
+	@Parameter(property = "failOnComponentCollisions", required = false)
+	boolean failOnComponentCollisions;
+
+	/**
+	 * Performs a training run of the finished application to create a class data sharing archive (an AOT cache on JDK 25+), which the launch script then uses to speed up application startup.
+	 * The training run uses the JVM configured for the application.
+	 * The archive records the modification times of the jars in the .woa, and the JVM ignores it if they change. It's therefore only usable from the .woa itself,
+	 * not from archives written with an outputTimestamp or from an OCI image, since both give every file a fixed modification time.
+	 */
+	@Parameter(property = "cdsTraining", required = false)
+	boolean cdsTraining;
+
+	/**
+	 * Class (on the application's classpath) to run instead of the principal class for the CDS training run. The training run ends when it exits.
+	 */
+	@Parameter(property = "cdsTrainingMainClass", required = false)
+	String cdsTrainingMainClass;
+
+	/**
+	 * URL requested to warm up the application during the CDS training run. The training run ends once the request succeeds.
+	 */
+	@Parameter(property = "cdsTrainingUrl", required = false)
+	String cdsTrainingUrl;
+
+	/**
+	 * Arguments passed to the application for the CDS training run (separated by whitespace), for example "-WOPort 1085"
+	 */
+	@Parameter(property = "cdsTrainingArguments", required = false)
+	String cdsTrainingArguments;
+
+	/**
+	 * Maximum duration of the CDS training run in seconds. If neither cdsTrainingMainClass nor cdsTrainingUrl are set, the application is simply run for this long.
+	 */
+	@Parameter(property = "cdsTrainingTimeout", required = false, defaultValue = "120")
+	int cdsTrainingTimeout;
+
+	/**
+	 * Write the WOA (and split webserver resources) directly into archives, without creating the .woa directory in the target folder.
+	 * Requires createArchives.
+	 */
+	@Parameter(property = "archiveOnly", required = false)
+	boolean archiveOnly;
+
+	/**
+	 * Writes the application as an OCI image layout, packed into target/{finalName}.oci.tar. The image's layers are ordered from most to least stable:
+	 * third-party dependency jars, framework webserver resources, in-house framework jars (from the project's group or snapshots), the application and generated configuration.
+	 * The image has no base layers (and thus no Java runtime).
+	 */
+	@Parameter(property = "ociImage", required = false)
+	boolean ociImage;
+
+	/**
+	 * CPU architecture the OCI image is declared for
+	 */
+	@Parameter(property = "ociArchitecture", required = false, defaultValue = "amd64")
+	String ociArchitecture;
+
+	/**
+	 * Path (relative to the project) of a previously released WOA, either the .woa directory or an archive of it. When set (along with createArchives),
+	 * a delta archive (target/{finalName}.woapplication-delta.{format}) is created, containing only the files that changed since that release,
+	 * a list of deleted files and the checksums of every file in the new WOA.
+	 */
+	@Parameter(property = "deltaBase", required = false)
+	String deltaBase;
+
+	/**
+	 * Skips packaging if none of the build's inputs (principal jar, dependencies, resources, build.properties, launch.* overrides and the plugin's configuration and version)
+	 * changed since the last build. The inputs are recorded in target/{finalName}.vermilingua-inputs
+	 */
+	@Parameter(property = "upToDateCheck", required = false)
+	boolean upToDateCheck;
+
+	/**
+	 * Writes the time spent, files and bytes processed and jars opened by each stage of packaging to target/{finalName}-packaging-report.json,
+	 * and logs them as a table at the end of the build. The stages are also recorded as JFR events (vermilingua.PackagingStage) whenever JFR is recording.
+	 */
+	@Parameter(property = "packagingReport", required = false)
+	boolean packagingReport;
+
+	/**
+	 * Maximum memory (in megabytes, estimated) used to hold the entry lists and webserver resources of dependency jars, shared by every module packaged in the same build
+	 * (including modules packaged in parallel with -T), so jars used by multiple applications are only read once. 0 (the default) disables the cache.
+	 * Worth enabling in reactors where many applications share the same frameworks, especially when building with -T.
+	 * A single application is better off without it, since each framework jar is then opened once to list it's entries and again to read it's webserver resources, rather than in a single pass.
+	 * The cache is created by the first module packaged, with that module's setting.
+	 */
+	@Parameter(property = "jarCacheSize", required = false, defaultValue = "0")
+	int jarCacheSize;
+
+	/**
+	 * Keeps the webserver resources extracted from framework jars in a store on disk between builds (keyed by the jar's checksum), and links or copies them
+	 * into the WOA from there (using linkStrategy), so each version of a framework is only extracted once on this machine.
+	 */
+	@Parameter(property = "extractionStore", required = false)
+	boolean extractionStore;
+
+	/**
+	 * Location of the extraction store. Defaults to ~/.m2/vermilingua-cache. The store can be shared by any number of builds running at the same time.
+	 */
+	@Parameter(property = "extractionStorePath", required = false)
+	String extractionStorePath;
+
+	/**
+	 * Size (in megabytes) the extraction store is kept within, by evicting the entries least recently used by any build
+	 */
+	@Parameter(property = "extractionStoreSize", required = false, defaultValue = "2048")
+	int extractionStoreSize;
+
+	/**
+	 * Timestamp for reproducible builds (seconds since the epoch or an ISO 8601 date-time), the same property other Maven plugins use.
+	 * When set, archives and framework jars are written reproducibly: every entry we write gets this modification time, in a stable order,
+	 * with ownership cleared and permissions normalized.
+	 */
+	@Parameter(defaultValue = "${project.build.outputTimestamp}")
+	String outputTimestamp;
+
+	/**
+	 * Version of this plugin, part of the inputs recorded by upToDateCheck
+	 */
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	String pluginVersion;
+
 	@Inject
 	MavenProjectHelper projectHelper;
 
@@ -108,59 +363,396 @@ public class PackageMojo extends AbstractMojo {
 				componentsPath,
 				webserverResourcesPath );
 
+		final String finalName = mavenProject.getBuild().getFinalName();
+		final Path targetPath = Path.of( mavenProject.getBuild().getDirectory() ); // Maven's target directory
+		final Path upToDatePath = targetPath.resolve( finalName + ".vermilingua-inputs" );
+		final Instant timestamp = parseOutputTimestamp( outputTimestamp );
+
+		final UpToDateCheck inputs = upToDateCheck ? UpToDateCheck.of( sourceProject, configuration() ) : null;
+
+		if( inputs != null ) {
+			if( inputs.isUpToDate( upToDatePath ) && outputsExist( sourceProject, finalName, targetPath ) ) {
+				getLog().info( "Nothing changed since the last build of " + sourceProject.name() + ", skipping packaging" );
+
+				// The archives still need to be attached to this build's project
+				if( sourceProject.type().isApp() && createArchives ) {
+					final ArchiveFormat format = ArchiveFormat.of( archiveFormat );
+					final Path wsrArchive = wsrArchivePath( format, finalName, targetPath );
+					attachArchives( format, woaArchivePath( format, finalName, targetPath ), Files.exists( wsrArchive ) ? wsrArchive : null );
+				}
+
+				return;
+			}
+
+			UpToDateCheck.invalidate( upToDatePath );
+		}
+
+		final PackagingReport report = new PackagingReport();
+		final JarCache jarCache = jarCache();
+		final ExtractionStore extractionStore = extractionStore();
+		final CDSTrainer.Settings cdsTrainingSettings = cdsTraining ? new CDSTrainer.Settings( cdsTrainingMainClass, cdsTrainingUrl, arguments( cdsTrainingArguments ), cdsTrainingTimeout ) : null;
+		final PackagingOptions options = new PackagingOptions( incremental, incrementalChecksums, LinkStrategy.of( linkStrategy ), packagingThreads, fingerprintWebServerResources, precompressWebServerResources, precompressMinimumSize, launcherJar, argFileLaunch, resourceIndex, failOnComponentCollisions, cdsTrainingSettings, timestamp, report, jarCache, extractionStore );
+
 		switch( sourceProject.type() ) {
 			case Application -> {
-				final String finalName = mavenProject.getBuild().getFinalName();
-				final Path targetPath = Path.of( mavenProject.getBuild().getDirectory() ); // Maven's target directory
 
-				final WOA woa = new PackageWOApplication().execute( sourceProject, finalName, targetPath );
+				if( createArchives ) {
+					final ArchiveFormat format = ArchiveFormat.of( archiveFormat );
 
-				if( performSplit ) {
-					extractWebServerResources( woa );
+					if( !format.isValidCompressionLevel( compressionLevel ) ) {
+						throw new MojoFailureException( "'compressionLevel' %s isn't valid for %s archives, use %s (or -1 for the default)".formatted( compressionLevel, format.extension(), format.compressionLevels() ) );
+					}
 				}
 
-				if( createArchives ) {
-					createAndAttachArchives( woa, finalName, targetPath );
+				if( deltaBase != null && (!createArchives || archiveOnly) ) {
+					throw new MojoFailureException( "'deltaBase' requires 'createArchives' to be set, and can't be used with 'archiveOnly'" );
+				}
+
+				if( archiveOnly ) {
+					if( !createArchives ) {
+						throw new MojoFailureException( "'archiveOnly' requires 'createArchives' to be set" );
+					}
+
+					if( fingerprintWebServerResources || precompressWebServerResources || cdsTraining || ociImage ) {
+						throw new MojoFailureException( "'fingerprintWebServerResources', 'precompressWebServerResources', 'cdsTraining' and 'ociImage' can't be used with 'archiveOnly'" );
+					}
+
+					packageToArchives( sourceProject, options, finalName, targetPath );
+				}
+				else {
+					// The JVM rejects a CDS archive/AOT cache if the modification time of any jar on the classpath changed since training
+					if( cdsTraining && ociImage ) {
+						getLog().warn( "The CDS archive won't be usable in the OCI image, since the image gives every file a fixed modification time" );
+					}
+
+					if( cdsTraining && createArchives && timestamp != null ) {
+						getLog().warn( "The CDS archive won't be usable when extracted from the archives, since 'outputTimestamp' gives every file in them a fixed modification time" );
+					}
+
+					final WOA woa = new PackageWOApplication( options ).execute( sourceProject, finalName, targetPath );
+
+					// Must happen before the split, which might move webserver resources out of the WOA
+					if( ociImage ) {
+						final Path imagePath = targetPath.resolve( finalName + ".oci.tar" );
+						getLog().info( "Creating OCI image " + imagePath.getFileName() );
+
+						try( final Section section = report.begin( Stage.OCIImage ) ) {
+							OCIImage.write( woa, sourceProject, new OCIImage.Settings( ociArchitecture, this::isInHouse, timestamp != null ? timestamp : OCIImage.DEFAULT_TIMESTAMP ), imagePath );
+							section.files( 1 );
+							section.bytesWritten( Util.size( imagePath ) );
+						}
+					}
+
+					if( performSplit ) {
+						try( final Section section = report.begin( Stage.Split ) ) {
+							extractWebServerResources( woa, splitMode );
+						}
+					}
+
+					if( createArchives ) {
+						createAndAttachArchives( woa, finalName, targetPath, timestamp, report );
+					}
 				}
 			}
 			case Framework -> {
-				new PackageWOFramework().execute( sourceProject );
+				new PackageWOFramework( options ).execute( sourceProject );
+			}
+		}
+
+		if( packagingReport ) {
+			final Path reportPath = targetPath.resolve( finalName + PackagingReport.FILENAME_SUFFIX );
+			report.write( reportPath );
+			getLog().info( "Packaging report written to " + reportPath.getFileName() );
+			report.toTable().forEach( getLog()::info );
+
+			if( sourceProject.type().isApp() ) {
+				getLog().info( "Shared jar cache: " + jarCache );
+
+				if( extractionStore != null ) {
+					getLog().info( "Extraction store: " + extractionStore );
+				}
 			}
 		}
+
+		if( inputs != null ) {
+			// Building a framework rewrites it's principal jar (which is one of the inputs), so that's described again
+			if( sourceProject.type().isFramework() ) {
+				inputs.updatePrincipalJar( sourceProject.principalJarPath() );
+			}
+
+			inputs.write( upToDatePath );
+		}
+	}
+
+	/**
+	 * @return true if [dependency] is developed along with the project (it's in the project's group or one of it's subgroups, or is a snapshot),
+	 * so it's placed in a less stable layer of the OCI image than third-party dependencies
+	 */
+	private boolean isInHouse( final Dependency dependency ) {
+		final String groupId = mavenProject.getGroupId();
+		return dependency.groupId().equals( groupId ) || dependency.groupId().startsWith( groupId + "." ) || dependency.version().endsWith( "-SNAPSHOT" );
+	}
+
+	/**
+	 * @return true if the products of a previous build of [sourceProject] are still present in [targetPath]
+	 */
+	private boolean outputsExist( final SourceProject sourceProject, final String finalName, final Path targetPath ) {
+
+		// A framework is packaged into it's principal jar, which is one of the build's inputs
+		if( sourceProject.type().isFramework() ) {
+			return true;
+		}
+
+		final WOA woa = WOA.create( targetPath, finalName );
+
+		if( !archiveOnly && !Files.isDirectory( woa.woaPath() ) ) {
+			return false;
+		}
+
+		if( !archiveOnly && performSplit && !Files.isDirectory( woa.woaPath().resolveSibling( woa.woaPath().getFileName() + ".webserverresources" ) ) ) {
+			return false;
+		}
+
+		if( createArchives && !Files.exists( woaArchivePath( ArchiveFormat.of( archiveFormat ), finalName, targetPath ) ) ) {
+			return false;
+		}
+
+		if( ociImage && !Files.exists( targetPath.resolve( finalName + ".oci.tar" ) ) ) {
+			return false;
+		}
+
+		// The previous release is an input of the delta, but not one we keep track of
+		if( deltaBase != null ) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The plugin's version and configuration, one "name=value" line per parameter affecting the build's output
+	 */
+	private List<String> configuration() {
+		return List.of(
+				"plugin=" + pluginVersion,
+				"pluginChecksum=" + pluginChecksum(),
+				"woresourcesPath=" + woresourcesPath,
+				"componentsPath=" + componentsPath,
+				"webserverResourcesPath=" + webserverResourcesPath,
+				"performSplit=" + performSplit,
+				"splitMode=" + splitMode,
+				"createArchives=" + createArchives,
+				"archiveOnly=" + archiveOnly,
+				"archiveFormat=" + archiveFormat,
+				"compressionThreads=" + compressionThreads,
+				"compressionLevel=" + compressionLevel,
+				"compressionLongRange=" + compressionLongRange,
+				"linkStrategy=" + linkStrategy,
+				"fingerprintWebServerResources=" + fingerprintWebServerResources,
+				"precompressWebServerResources=" + precompressWebServerResources,
+				"precompressMinimumSize=" + precompressMinimumSize,
+				"launcherJar=" + launcherJar,
+				"argFileLaunch=" + argFileLaunch,
+				"resourceIndex=" + resourceIndex,
+				"failOnComponentCollisions=" + failOnComponentCollisions,
+				"cdsTraining=" + cdsTraining,
+				"cdsTrainingMainClass=" + cdsTrainingMainClass,
+				"cdsTrainingUrl=" + cdsTrainingUrl,
+				"cdsTrainingArguments=" + cdsTrainingArguments,
+				"cdsTrainingTimeout=" + cdsTrainingTimeout,
+				"outputTimestamp=" + outputTimestamp,
+				"ociImage=" + ociImage,
+				"ociArchitecture=" + ociArchitecture,
+				"deltaBase=" + deltaBase );
 	}
 
 	/**
-	 * Creates tar.gz archives of the WOA (and optionally the split webserver resources)
+	 * @return SHA-256 of the plugin's jar, so a rebuilt snapshot of the plugin doesn't consider the previous build up to date. "unknown" if we're not loaded from a jar.
+	 */
+	private static String pluginChecksum() {
+		try {
+			final Path pluginJarPath = Path.of( PackageMojo.class.getProtectionDomain().getCodeSource().getLocation().toURI() );
+
+			if( Files.isRegularFile( pluginJarPath ) ) {
+				return Util.sha256( pluginJarPath );
+			}
+		}
+		catch( final URISyntaxException | IllegalArgumentException | SecurityException e ) {
+			// Fall through, a missing checksum just means we rely on the version
+		}
+
+		return "unknown";
+	}
+
+	/**
+	 * Creates archives of the WOA (and optionally the split webserver resources)
 	 * and attaches them as Maven artifacts.
 	 */
-	private void createAndAttachArchives( final WOA woa, final String finalName, final Path targetPath ) {
+	private void createAndAttachArchives( final WOA woa, final String finalName, final Path targetPath, final Instant timestamp, final PackagingReport report ) {
+		final ArchiveFormat format = ArchiveFormat.of( archiveFormat );
+		final ArchiveWriter.Settings settings = archiveSettings( timestamp );
+
 		// Archive the .woa bundle
-		final Path woaArchive = targetPath.resolve( finalName + ".woapplication.tar.gz" );
+		final Path woaArchive = woaArchivePath( format, finalName, targetPath );
 		getLog().info( "Creating " + woaArchive.getFileName() );
-		Util.createTarGz( woa.woaPath(), woaArchive );
+		createArchive( woa.woaPath(), woaArchive, format, settings, report );
+
+		// If split was performed, archive the webserver resources too
+		Path wsrArchive = null;
+
+		if( performSplit ) {
+			final Path splitPath = woa.woaPath().getParent().resolve( woa.woaPath().getFileName() + ".webserverresources" );
+			if( splitPath.toFile().isDirectory() ) {
+				wsrArchive = wsrArchivePath( format, finalName, targetPath );
+				getLog().info( "Creating " + wsrArchive.getFileName() );
+				createArchive( splitPath, wsrArchive, format, settings, report );
+			}
+		}
+
+		attachArchives( format, woaArchive, wsrArchive );
+
+		if( deltaBase != null ) {
+			final Path deltaArchive = targetPath.resolve( finalName + ".woapplication-delta." + format.extension() );
+			getLog().info( "Creating " + deltaArchive.getFileName() );
+
+			try( final Section section = report.begin( Stage.DeltaArchive ) ) {
+				final DeltaArchive.Summary summary = DeltaArchive.write( woa.woaPath(), mavenProject.getBasedir().toPath().resolve( deltaBase ), deltaArchive, format, settings );
+				section.files( summary.changed() );
+				section.bytesWritten( Util.size( deltaArchive ) );
+				getLog().info( "Delta contains %d added or changed files and %d deleted files (%d unchanged)".formatted( summary.changed(), summary.deleted(), summary.unchanged() ) );
+			}
+
+			projectHelper.attachArtifact( mavenProject, format.extension(), "delta", deltaArchive.toFile() );
+		}
+	}
+
+	/**
+	 * Archives the directory at [sourcePath] to [archivePath], recording the work in [report]
+	 */
+	private static void createArchive( final Path sourcePath, final Path archivePath, final ArchiveFormat format, final ArchiveWriter.Settings settings, final PackagingReport report ) {
+		try( final Section section = report.begin( Stage.Archiving ) ) {
+			Util.createArchive( sourcePath, archivePath, format, settings );
+			section.files( 1 );
+			section.bytesWritten( Util.size( archivePath ) );
+		}
+	}
+
+	/**
+	 * @return The jar cache shared by every module packaged in this build session, created if this is the first one
+	 */
+	private JarCache jarCache() {
+		if( jarCacheSize <= 0 ) {
+			return new JarCache( 0 );
+		}
+
+		// Keyed by our class, since a build using multiple versions of the plugin loads a JarCache class for each of them
+		return (JarCache)mavenSession.getRepositorySession().getData().computeIfAbsent( JarCache.class, () -> new JarCache( jarCacheSize * 1024L * 1024L ) );
+	}
+
+	/**
+	 * @return The extraction store shared by every module packaged in this build session, or null if we're not using one
+	 */
+	private ExtractionStore extractionStore() {
+		if( !extractionStore ) {
+			return null;
+		}
+
+		// Shared so every module's hits and misses end up in the same statistics
+		return (ExtractionStore)mavenSession.getRepositorySession().getData().computeIfAbsent( ExtractionStore.class, () -> {
+			final Path rootPath = extractionStorePath != null ? Path.of( extractionStorePath ) : ExtractionStore.defaultRootPath();
+			return new ExtractionStore( rootPath, extractionStoreSize * 1024L * 1024L );
+		} );
+	}
+
+	/**
+	 * Writes the application directly into archives (without creating the WOA directory) and attaches them as Maven artifacts
+	 */
+	private void packageToArchives( final SourceProject sourceProject, final PackagingOptions options, final String finalName, final Path targetPath ) {
+		final ArchiveFormat format = ArchiveFormat.of( archiveFormat );
+
+		final Path woaArchive = woaArchivePath( format, finalName, targetPath );
+		final Path wsrArchive = performSplit ? wsrArchivePath( format, finalName, targetPath ) : null;
+
+		getLog().info( "Creating " + woaArchive.getFileName() + (wsrArchive != null ? " and " + wsrArchive.getFileName() : "") );
+		new PackageWOApplication( options ).executeToArchive( sourceProject, finalName, woaArchive, wsrArchive, format, archiveSettings( options.timestamp() ) );
+
+		attachArchives( format, woaArchive, wsrArchive );
+	}
+
+	/**
+	 * Sets [woaArchive] as the project's primary artifact and attaches [wsrArchive] (if not null) as a secondary one
+	 */
+	private void attachArchives( final ArchiveFormat format, final Path woaArchive, final Path wsrArchive ) {
+		final String woaArchiveType = "woapplication." + format.extension();
 
 		// Set as primary artifact
-		final DefaultArtifactHandler handler = new DefaultArtifactHandler( "woapplication.tar.gz" );
+		final DefaultArtifactHandler handler = new DefaultArtifactHandler( woaArchiveType );
 		final DefaultArtifact artifact = new DefaultArtifact(
 				mavenProject.getGroupId(), mavenProject.getArtifactId(), mavenProject.getVersion(),
-				null, "woapplication.tar.gz", null, handler );
+				null, woaArchiveType, null, handler );
 		artifact.setFile( woaArchive.toFile() );
 		mavenProject.setArtifact( artifact );
 
-		// If split was performed, archive the webserver resources too
-		if( performSplit ) {
-			final Path splitPath = woa.woaPath().getParent().resolve( woa.woaPath().getFileName() + ".webserverresources" );
-			if( splitPath.toFile().isDirectory() ) {
-				final Path wsrArchive = targetPath.resolve( finalName + ".wowebserverresources.tar.gz" );
-				getLog().info( "Creating " + wsrArchive.getFileName() );
-				Util.createTarGz( splitPath, wsrArchive );
-				projectHelper.attachArtifact( mavenProject, "tar.gz", "wowebserverresources", wsrArchive.toFile() );
+		if( wsrArchive != null ) {
+			projectHelper.attachArtifact( mavenProject, format.extension(), "wowebserverresources", wsrArchive.toFile() );
+		}
+	}
+
+	/**
+	 * @return [string] split into arguments at whitespace. Empty list for null
+	 */
+	private static List<String> arguments( final String string ) {
+		if( string == null || string.isBlank() ) {
+			return List.of();
+		}
+
+		return List.of( string.trim().split( "\\s+" ) );
+	}
+
+	private ArchiveWriter.Settings archiveSettings( final Instant timestamp ) {
+		return new ArchiveWriter.Settings( compressionThreads, compressionLevel, compressionLongRange, timestamp );
+	}
+
+	/**
+	 * @return [outputTimestamp] (seconds since the epoch, or an ISO 8601 date-time with an offset) as an Instant. null if it's not set, or set to a single character (Maven's convention for disabling it)
+	 */
+	private static Instant parseOutputTimestamp( final String outputTimestamp ) throws MojoFailureException {
+		if( outputTimestamp == null || outputTimestamp.length() < 2 ) {
+			return null;
+		}
+
+		final Instant timestamp;
+
+		try {
+			if( outputTimestamp.chars().allMatch( Character::isDigit ) ) {
+				timestamp = Instant.ofEpochSecond( Long.parseLong( outputTimestamp ) );
 			}
+			else {
+				timestamp = OffsetDateTime.parse( outputTimestamp ).toInstant();
+			}
+		}
+		catch( final DateTimeParseException | NumberFormatException e ) {
+			throw new MojoFailureException( "Invalid 'project.build.outputTimestamp' '%s'. Use seconds since the epoch or an ISO 8601 date-time like 2026-01-01T00:00:00Z".formatted( outputTimestamp ) );
 		}
+
+		// The earliest time a zip entry can hold
+		if( timestamp.isBefore( MINIMUM_OUTPUT_TIMESTAMP ) ) {
+			throw new MojoFailureException( "'project.build.outputTimestamp' must be after %s".formatted( MINIMUM_OUTPUT_TIMESTAMP ) );
+		}
+
+		return timestamp;
+	}
+
+	private static Path woaArchivePath( final ArchiveFormat format, final String finalName, final Path targetPath ) {
+		return targetPath.resolve( finalName + ".woapplication." + format.extension() );
+	}
+
+	private static Path wsrArchivePath( final ArchiveFormat format, final String finalName, final Path targetPath ) {
+		return targetPath.resolve( finalName + ".wowebserverresources." + format.extension() );
 	}
 
 	/**
-	 * Once the build is completed, copies the folders:
+	 * Once the build is completed, places the folders:
 	 *
 	 *  - App.woa/WebServerResources
 	 *  - App.woa/Contents/Frameworks
@@ -168,13 +760,48 @@ public class PackageMojo extends AbstractMojo {
 	 *  from the build product into a new directory created adjacent to the WOA
 	 *
 	 *  - App.woa.webserverresources
+	 *
+	 *  Files are copied (or linked) using the LinkStrategy named by [splitMode], or moved out of the WOA if [splitMode] is 'move'
 	 */
-	private static void extractWebServerResources( final WOA woa ) {
+	private static void extractWebServerResources( final WOA woa, final String splitMode ) {
 		final Path splitPath = Util.folder( woa.woaPath().getParent().resolve( woa.woaPath().getFileName() + ".webserverresources" ) );
-		final Path splitWebServerResourcesPath = Util.folder( splitPath.resolve( "Contents" ).resolve( "WebServerResources" ) );
-		final Path splitFrameworksPath = Util.folder( splitPath.resolve( "Contents" ).resolve( "Frameworks" ) );
+		final Path splitWebServerResourcesPath = splitPath.resolve( "Contents" ).resolve( "WebServerResources" );
+		final Path splitFrameworksPath = splitPath.resolve( "Contents" ).resolve( "Frameworks" );
+
+		if( "move".equalsIgnoreCase( splitMode ) ) {
+			moveDirectory( woa.webserverResourcesPath(), splitWebServerResourcesPath );
+			moveDirectory( woa.frameworksPath(), splitFrameworksPath );
+			return;
+		}
+
+		final LinkStrategy linkStrategy = LinkStrategy.of( splitMode );
+
+		final BiConsumer<Path, Path> copyFunction = ( source, destination ) -> {
+			Util.createParentDirectories( destination );
+			linkStrategy.apply( source, destination );
+		};
+
+		Util.folder( splitWebServerResourcesPath );
+		Util.folder( splitFrameworksPath );
+		Util.copyContentsOfDirectoryToDirectory( woa.webserverResourcesPath(), splitWebServerResourcesPath, copyFunction );
+		Util.copyContentsOfDirectoryToDirectory( woa.frameworksPath(), splitFrameworksPath, copyFunction );
+	}
+
+	/**
+	 * Replaces [destinationPath] with the directory at [sourcePath], leaving an empty directory at [sourcePath].
+	 * Both are in the build directory, so this is just a rename.
+	 */
+	private static void moveDirectory( final Path sourcePath, final Path destinationPath ) {
+		Util.deleteRecursively( destinationPath );
+		Util.createParentDirectories( destinationPath );
+
+		try {
+			Files.move( sourcePath, destinationPath );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
 
-		Util.copyContentsOfDirectoryToDirectory( woa.webserverResourcesPath(), splitWebServerResourcesPath );
-		Util.copyContentsOfDirectoryToDirectory( woa.frameworksPath(), splitFrameworksPath );
+		Util.folder( sourcePath );
 	}
-}
\ No newline at end of file
+}
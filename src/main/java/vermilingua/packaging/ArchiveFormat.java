@@ -0,0 +1,100 @@
+package vermilingua.packaging;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Formats we can create archives of build products in
+ */
+
+public enum ArchiveFormat {
+
+	/**
+	 * tar, compressed with gzip
+	 */
+	TarGz( "tar.gz" ),
+
+	/**
+	 * tar, compressed with zstd
+	 */
+	TarZst( "tar.zst" ),
+
+	/**
+	 * Uncompressed tar
+	 */
+	Tar( "tar" ),
+
+	/**
+	 * zip. Files that are already compressed (jars, images, fonts etc.) are stored as-is
+	 */
+	Zip( "zip" );
+
+	private final String _extension;
+
+	private ArchiveFormat( final String extension ) {
+		_extension = extension;
+	}
+
+	/**
+	 * @return The file extension for archives in this format (without a leading period)
+	 */
+	public String extension() {
+		return _extension;
+	}
+
+	/**
+	 * @return A description of the compression levels valid for this format
+	 */
+	public String compressionLevels() {
+		return switch( this ) {
+			case TarGz, Zip -> "0-9";
+			case TarZst -> "1-22";
+			case Tar -> "any (it's uncompressed)";
+		};
+	}
+
+	/**
+	 * @return true if [level] is a valid compression level for this format. -1 (the compressor's default) always is.
+	 */
+	public boolean isValidCompressionLevel( final int level ) {
+		if( level == -1 ) {
+			return true;
+		}
+
+		return switch( this ) {
+			case TarGz, Zip -> level >= 0 && level <= 9;
+			case TarZst -> level >= 1 && level <= 22;
+			case Tar -> true;
+		};
+	}
+
+	/**
+	 * @return The format with the given extension (tar.gz, tar.zst, tar or zip)
+	 */
+	public static ArchiveFormat of( final String extension ) {
+		Objects.requireNonNull( extension );
+
+		for( final ArchiveFormat format : values() ) {
+			if( format.extension().equalsIgnoreCase( extension ) ) {
+				return format;
+			}
+		}
+
+		throw new IllegalArgumentException( "Unknown archive format '%s'. I only know 'tar.gz', 'tar.zst', 'tar' and 'zip'".formatted( extension ) );
+	}
+
+	/**
+	 * @return The format of an archive named [filename], determined by it's extension
+	 */
+	public static ArchiveFormat ofFilename( final String filename ) {
+		Objects.requireNonNull( filename );
+
+		for( final ArchiveFormat format : values() ) {
+			if( filename.toLowerCase( Locale.ROOT ).endsWith( "." + format.extension() ) ) {
+				return format;
+			}
+		}
+
+		throw new IllegalArgumentException( "Can't determine the format of archive '%s'. I only know 'tar.gz', 'tar.zst', 'tar' and 'zip'".formatted( filename ) );
+	}
+}
@@ -0,0 +1,424 @@
+package vermilingua.packaging;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Writes entries to an archive in one of the supported ArchiveFormats
+ */
+
+public abstract class ArchiveWriter implements Closeable {
+
+	/**
+	 * Compression settings for archives
+	 *
+	 * @param threads Number of threads to compress on
+	 * @param level Compression level. -1 uses the compressor's default
+	 * @param longRange Enable zstd's long distance matching (with a 128 MB window). Only applies to tar.zst
+	 * @param timestamp If not null, the archive is written reproducibly: every entry gets this modification time, ownership is cleared and permissions are normalized
+	 */
+	public record Settings( int threads, int level, boolean longRange, Instant timestamp ) {
+
+		/**
+		 * @return Single threaded compression at the default level
+		 */
+		public static Settings defaults() {
+			return new Settings( 1, Deflater.DEFAULT_COMPRESSION, false, null );
+		}
+	}
+
+	/**
+	 * Window size (as a power of two) used for zstd's long distance matching. 2^27 (128 MB) is the largest window zstd will decompress without being explicitly told to allow more.
+	 */
+	private static final int ZSTD_LONG_WINDOW_LOG = 27;
+
+	/**
+	 * Default compression level for zstd, when none is specified
+	 */
+	private static final int ZSTD_DEFAULT_LEVEL = 3;
+
+	/**
+	 * Extensions of files that are already compressed. These are stored without compression in zip files, since compressing them again just wastes time.
+	 */
+	private static final Set<String> COMPRESSED_EXTENSIONS = Set.of( "jar", "zip", "gz", "tgz", "zst", "br", "bz2", "xz", "png", "jpg", "jpeg", "gif", "webp", "avif", "woff", "woff2", "mp3", "mp4", "pdf" );
+
+	/**
+	 * @return A writer for a new archive at [targetFile] in the given [format]
+	 */
+	public static ArchiveWriter open( final Path targetFile, final ArchiveFormat format, final Settings settings ) {
+		Objects.requireNonNull( targetFile );
+		Objects.requireNonNull( format );
+		Objects.requireNonNull( settings );
+
+		try {
+			return switch( format ) {
+				case TarGz -> new Tar( gzipOutputStream( new BufferedOutputStream( Files.newOutputStream( targetFile ) ), settings ), settings.timestamp() );
+				case TarZst -> new Tar( zstdOutputStream( new BufferedOutputStream( Files.newOutputStream( targetFile ) ), settings ), settings.timestamp() );
+				case Tar -> new Tar( new BufferedOutputStream( Files.newOutputStream( targetFile ) ), settings.timestamp() );
+				case Zip -> new Zip( targetFile, settings );
+			};
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Creates an archive of the given directory. The directory itself will be the root entry of the archive.
+	 * Entries are written in order of their names, so the archive doesn't depend on the order the filesystem lists files in.
+	 * Our incremental build manifest (which describes the build machine's files) is left out.
+	 */
+	public static void archiveDirectory( final Path sourceDirectory, final Path targetFile, final ArchiveFormat format, final Settings settings ) {
+		Objects.requireNonNull( sourceDirectory );
+
+		final Path parentDir = sourceDirectory.getParent();
+
+		try( final ArchiveWriter writer = open( targetFile, format, settings );
+				final Stream<Path> paths = Files.walk( sourceDirectory ) ) {
+			paths
+					.filter( path -> !path.getFileName().toString().equals( WOAManifest.FILENAME ) )
+					.sorted( Comparator.comparing( path -> parentDir.relativize( path ).toString() ) )
+					.forEach( path -> {
+						final String entryName = parentDir.relativize( path ).toString().replace( '\\', '/' );
+
+						if( Files.isDirectory( path ) ) {
+							writer.putDirectory( entryName, path );
+						}
+						else {
+							writer.putFile( entryName, path, Files.isExecutable( path ) );
+						}
+					} );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Adds a directory entry. If given, the entry's attributes are read from the directory at [sourcePath].
+	 */
+	public abstract void putDirectory( String name, Path sourcePath );
+
+	/**
+	 * Adds an entry with the content of the file at [sourcePath]
+	 */
+	public abstract void putFile( String name, Path sourcePath, boolean executable );
+
+	/**
+	 * Adds an entry containing [bytes]
+	 */
+	public abstract void putBytes( String name, byte[] bytes, boolean executable );
+
+	/**
+	 * Adds an entry containing [size] bytes read from [inputStream]
+	 */
+	public abstract void putStream( String name, InputStream inputStream, long size, boolean executable );
+
+	private static OutputStream gzipOutputStream( final OutputStream out, final Settings settings ) throws IOException {
+		if( settings.threads() > 1 ) {
+			return new ParallelGzipOutputStream( out, settings.threads(), settings.level() );
+		}
+
+		final GzipParameters parameters = new GzipParameters();
+		parameters.setCompressionLevel( settings.level() );
+		return new GzipCompressorOutputStream( out, parameters );
+	}
+
+	private static OutputStream zstdOutputStream( final OutputStream out, final Settings settings ) throws IOException {
+		final int level = settings.level() == Deflater.DEFAULT_COMPRESSION ? ZSTD_DEFAULT_LEVEL : settings.level();
+		final ZstdOutputStream zstdOutputStream = new ZstdOutputStream( out, level );
+
+		// zstd does it's own multithreading, it just needs to be told how many workers to use
+		if( settings.threads() > 1 ) {
+			zstdOutputStream.setWorkers( settings.threads() );
+		}
+
+		if( settings.longRange() ) {
+			zstdOutputStream.setLong( ZSTD_LONG_WINDOW_LOG );
+		}
+
+		return zstdOutputStream;
+	}
+
+	/**
+	 * @return [timestamp] as a value for ZipEntry.setTime(), which stores times in the local time zone.
+	 * Shifted by the time zone's offset, so the stored time (and thus the archive) is the same regardless of which time zone it's created in.
+	 */
+	static long zipTime( final Instant timestamp ) {
+		final long millis = timestamp.toEpochMilli();
+		return millis - TimeZone.getDefault().getOffset( millis );
+	}
+
+	/**
+	 * @return true if the file named [name] is most likely already compressed
+	 */
+	static boolean isCompressed( final String name ) {
+		final int periodIndex = name.lastIndexOf( '.' );
+		return periodIndex != -1 && COMPRESSED_EXTENSIONS.contains( name.substring( periodIndex + 1 ).toLowerCase( Locale.ROOT ) );
+	}
+
+	private static class Tar extends ArchiveWriter {
+
+		private final TarArchiveOutputStream _taos;
+
+		/**
+		 * Modification time of every entry when writing reproducibly. null if not
+		 */
+		private final Instant _timestamp;
+
+		private Tar( final OutputStream out, final Instant timestamp ) {
+			_taos = new TarArchiveOutputStream( out );
+			_taos.setLongFileMode( TarArchiveOutputStream.LONGFILE_GNU );
+			_timestamp = timestamp;
+		}
+
+		@Override
+		public void putDirectory( final String name, final Path sourcePath ) {
+			try {
+				// When writing reproducibly, we don't read any attributes from the filesystem
+				put( sourcePath != null && _timestamp == null ? new TarArchiveEntry( sourcePath, name ) : new TarArchiveEntry( name.endsWith( "/" ) ? name : name + "/" ), null, null );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		@Override
+		public void putFile( final String name, final Path sourcePath, final boolean executable ) {
+			try {
+				final TarArchiveEntry entry;
+
+				// When writing reproducibly, we don't read any attributes (like owner or access time) from the filesystem
+				if( _timestamp != null ) {
+					entry = new TarArchiveEntry( name );
+					entry.setSize( Files.size( sourcePath ) );
+				}
+				else {
+					entry = new TarArchiveEntry( sourcePath, name );
+				}
+
+				// Preserve executable permission
+				if( executable ) {
+					entry.setMode( 0755 );
+				}
+
+				put( entry, sourcePath, null );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		@Override
+		public void putBytes( final String name, final byte[] bytes, final boolean executable ) {
+			final TarArchiveEntry entry = new TarArchiveEntry( name );
+			entry.setSize( bytes.length );
+
+			if( executable ) {
+				entry.setMode( 0755 );
+			}
+
+			put( entry, null, bytes );
+		}
+
+		@Override
+		public void putStream( final String name, final InputStream inputStream, final long size, final boolean executable ) {
+			final TarArchiveEntry entry = new TarArchiveEntry( name );
+			entry.setSize( size );
+
+			if( executable ) {
+				entry.setMode( 0755 );
+			}
+
+			put( entry, inputStream, null );
+		}
+
+		/**
+		 * Writes [entry] with it's content read from [source], which is a Path, an InputStream or null
+		 */
+		private void put( final TarArchiveEntry entry, final Object source, final byte[] bytes ) {
+			if( _timestamp != null ) {
+				normalize( entry );
+			}
+
+			try {
+				_taos.putArchiveEntry( entry );
+
+				if( source instanceof Path sourcePath ) {
+					Files.copy( sourcePath, _taos );
+				}
+
+				if( source instanceof InputStream inputStream ) {
+					inputStream.transferTo( _taos );
+				}
+
+				if( bytes != null ) {
+					_taos.write( bytes );
+				}
+
+				_taos.closeArchiveEntry();
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		/**
+		 * Sets [entry]'s modification time to our timestamp, clears it's ownership (which otherwise comes from the user building) and reduces it's permissions to 755 or 644
+		 */
+		private void normalize( final TarArchiveEntry entry ) {
+			entry.setModTime( Date.from( _timestamp ) );
+			entry.setUserId( 0 );
+			entry.setGroupId( 0 );
+			entry.setUserName( "" );
+			entry.setGroupName( "" );
+
+			if( entry.isDirectory() ) {
+				entry.setMode( TarArchiveEntry.DEFAULT_DIR_MODE );
+			}
+			else if( (entry.getMode() & 0100) != 0 ) {
+				entry.setMode( 0755 );
+			}
+			else {
+				entry.setMode( TarArchiveEntry.DEFAULT_FILE_MODE );
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			_taos.close();
+		}
+	}
+
+	private static class Zip extends ArchiveWriter {
+
+		/**
+		 * Unix file type bits for regular files and directories, combined with the permissions in the entries' unix mode
+		 */
+		private static final int REGULAR_FILE = 0100000;
+		private static final int DIRECTORY = 0040000;
+
+		private final ZipArchiveOutputStream _zos;
+
+		/**
+		 * Modification time of every entry when writing reproducibly. null if not
+		 */
+		private final Instant _timestamp;
+
+		/**
+		 * Writing to a seekable file allows the zip stream to fill in sizes and CRCs after the fact, which it needs to do for STORED entries
+		 */
+		private Zip( final Path targetFile, final Settings settings ) throws IOException {
+			_zos = new ZipArchiveOutputStream( targetFile );
+			_zos.setLevel( settings.level() );
+			_timestamp = settings.timestamp();
+		}
+
+		@Override
+		public void putDirectory( final String name, final Path sourcePath ) {
+			try {
+				final ZipArchiveEntry entry = new ZipArchiveEntry( name.endsWith( "/" ) ? name : name + "/" );
+				entry.setUnixMode( DIRECTORY | 0755 );
+
+				if( sourcePath != null ) {
+					entry.setTime( Files.getLastModifiedTime( sourcePath ).toMillis() );
+				}
+
+				put( entry, null, null );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		@Override
+		public void putFile( final String name, final Path sourcePath, final boolean executable ) {
+			try {
+				final ZipArchiveEntry entry = new ZipArchiveEntry( name );
+				entry.setTime( Files.getLastModifiedTime( sourcePath ).toMillis() );
+				put( prepare( entry, executable ), sourcePath, null );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		@Override
+		public void putBytes( final String name, final byte[] bytes, final boolean executable ) {
+			put( prepare( new ZipArchiveEntry( name ), executable ), null, bytes );
+		}
+
+		@Override
+		public void putStream( final String name, final InputStream inputStream, final long size, final boolean executable ) {
+			put( prepare( new ZipArchiveEntry( name ), executable ), inputStream, null );
+		}
+
+		private static ZipArchiveEntry prepare( final ZipArchiveEntry entry, final boolean executable ) {
+			entry.setMethod( isCompressed( entry.getName() ) ? ZipEntry.STORED : ZipEntry.DEFLATED );
+			entry.setUnixMode( REGULAR_FILE | (executable ? 0755 : 0644) );
+			return entry;
+		}
+
+		/**
+		 * Writes [entry] with it's content read from [source], which is a Path, an InputStream or null
+		 */
+		private void put( final ZipArchiveEntry entry, final Object source, final byte[] bytes ) {
+
+			// Permissions have already been normalized, a zip entry doesn't have an owner
+			if( _timestamp != null ) {
+				entry.setTime( zipTime( _timestamp ) );
+			}
+
+			try {
+				_zos.putArchiveEntry( entry );
+
+				if( source instanceof Path sourcePath ) {
+					Files.copy( sourcePath, _zos );
+				}
+
+				if( source instanceof InputStream inputStream ) {
+					inputStream.transferTo( _zos );
+				}
+
+				if( bytes != null ) {
+					_zos.write( bytes );
+				}
+
+				_zos.closeArchiveEntry();
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			_zos.close();
+		}
+	}
+}
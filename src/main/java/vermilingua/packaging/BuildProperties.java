@@ -5,6 +5,8 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -126,6 +128,28 @@ public class BuildProperties {
 		logger.warn( "Property '{}' in build.properties is deprecated. Use 'launch.{}' instead.", key, key );
 	}
 
+	/**
+	 * @return Every property from build.properties, the environment-specific properties and the "launch." overrides, one "source:key=value" line each, in a stable order.
+	 * Other overrides are ignored, since they're usually all of the system properties.
+	 */
+	public List<String> describe() {
+		final List<String> lines = new ArrayList<>();
+		lines.addAll( describe( "base", _baseProperties, "" ) );
+		lines.addAll( describe( "environment", _environmentProperties, "" ) );
+		lines.addAll( describe( "override", _overriddes, LAUNCH_PREFIX ) );
+		return lines;
+	}
+
+	private static List<String> describe( final String source, final Properties properties, final String prefix ) {
+		return properties
+				.stringPropertyNames()
+				.stream()
+				.filter( key -> key.startsWith( prefix ) )
+				.sorted()
+				.map( key -> source + ":" + key + "=" + properties.getProperty( key ) )
+				.toList();
+	}
+
 	public String principalClass() {
 		return _baseProperties.getProperty( "principalClass" );
 	}
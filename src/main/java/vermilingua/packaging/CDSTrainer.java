@@ -0,0 +1,219 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vermilingua.packaging.PackageWOApplication.WOA;
+
+/**
+ * Creates a class data sharing archive for a WOA by performing a training run of the application, allowing it to start faster.
+ *
+ * The application is launched using it's own launch script, with the JVM told to dump the classes it loaded into an archive at exit.
+ * On JDK 25 and later, we create an AOT cache (JEP 483/514), on older JDKs a dynamic AppCDS archive.
+ * The launch script picks up the archive if it's present. A JVM that can't use it (because it's a different JDK or the classpath has changed) just ignores it and starts normally.
+ */
+
+public class CDSTrainer {
+
+	private static final Logger logger = LoggerFactory.getLogger( CDSTrainer.class );
+
+	/**
+	 * The first Java version supporting -XX:AOTCacheOutput (creating an AOT cache in a single training run)
+	 */
+	private static final int AOT_CACHE_JAVA_VERSION = 25;
+
+	/**
+	 * How long we wait for the JVM to write the archive after we ask it to stop
+	 */
+	private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds( 60 );
+
+	/**
+	 * How the training run is performed
+	 *
+	 * @param mainClass If set, the training run launches this class (from the application's classpath) instead of the principal class, and ends when it exits
+	 * @param url If set, the training run ends once a request to this URL succeeds. Use to warm up the application by hitting a (direct action) URL that exercises it.
+	 * @param arguments Additional arguments passed to the application (via it's launch script) for the training run
+	 * @param timeoutSeconds How long we wait for the training run to finish. If neither mainClass nor url are set, the application is simply run for this long.
+	 */
+	public record Settings( String mainClass, String url, List<String> arguments, int timeoutSeconds ) {
+
+		public Settings {
+			Objects.requireNonNull( arguments );
+		}
+	}
+
+	/**
+	 * Extension of an AOT cache. The launch script uses the extension to determine how to use the archive.
+	 */
+	public static final String AOT_CACHE_EXTENSION = ".aot";
+
+	/**
+	 * Extension of a dynamic AppCDS archive
+	 */
+	public static final String CDS_ARCHIVE_EXTENSION = ".jsa";
+
+	/**
+	 * Performs a training run of the application in [woa] (using it's launch script, named [applicationName]) and writes the archive to [archiveName] in the WOA root,
+	 * with an extension depending on the type of archive [jvm] can create. Failure to create the archive is logged but not fatal, since the application runs just fine without it.
+	 *
+	 * @return true if the archive was created
+	 */
+	public static boolean train( final WOA woa, final String applicationName, final String archiveName, final String jvm, final Settings settings ) {
+		Objects.requireNonNull( woa );
+		Objects.requireNonNull( applicationName );
+		Objects.requireNonNull( archiveName );
+		Objects.requireNonNull( jvm );
+		Objects.requireNonNull( settings );
+
+		final Path aotCachePath = woa.woaPath().resolve( archiveName + AOT_CACHE_EXTENSION ).toAbsolutePath();
+		final Path cdsArchivePath = woa.woaPath().resolve( archiveName + CDS_ARCHIVE_EXTENSION ).toAbsolutePath();
+		final Path logPath = woa.woaPath().toAbsolutePath().resolveSibling( applicationName + "-cds-training.log" );
+
+		// An archive from a previous build is no longer valid for the jars in the WOA (and would otherwise be used by the training run). The JVM might have changed too, so we delete either type.
+		try {
+			Files.deleteIfExists( aotCachePath );
+			Files.deleteIfExists( cdsArchivePath );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		// Decided only now, so the JVM only gets started to find out when we're performing a training run with it anyway
+		final boolean aotCache = javaVersion( jvm ) >= AOT_CACHE_JAVA_VERSION;
+		final Path archivePath = aotCache ? aotCachePath : cdsArchivePath;
+
+		final List<String> command = new ArrayList<>();
+		command.add( woa.woaPath().resolve( applicationName ).toAbsolutePath().toString() );
+
+		// The launch script passes -X arguments on to the JVM only
+		if( aotCache ) {
+			command.add( "-XX:AOTCacheOutput=" + archivePath );
+		}
+		else {
+			command.add( "-XX:ArchiveClassesAtExit=" + archivePath );
+		}
+
+		if( settings.mainClass() != null ) {
+			command.add( "-launch.principalClass=" + settings.mainClass() );
+		}
+
+		command.addAll( settings.arguments() );
+
+		logger.info( "Performing CDS training run of {}. Output is written to {}", applicationName, logPath.getFileName() );
+
+		try {
+			final Process process = new ProcessBuilder( command )
+					.directory( woa.woaPath().toFile() )
+					.redirectErrorStream( true )
+					.redirectOutput( logPath.toFile() )
+					.start();
+
+			final boolean exited;
+
+			if( settings.url() != null ) {
+				awaitURL( process, settings.url(), settings.timeoutSeconds() );
+				exited = false;
+			}
+			else {
+				exited = process.waitFor( settings.timeoutSeconds(), TimeUnit.SECONDS );
+			}
+
+			// The archive gets written when the JVM shuts down, which it does in an orderly manner on SIGTERM
+			if( !exited ) {
+				process.destroy();
+
+				if( !process.waitFor( SHUTDOWN_TIMEOUT.toSeconds(), TimeUnit.SECONDS ) ) {
+					process.destroyForcibly();
+				}
+			}
+		}
+		catch( final IOException e ) {
+			logger.warn( "CDS training run of {} failed, the application will launch without a CDS archive: {}", applicationName, e.getMessage() );
+			return false;
+		}
+		catch( final InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( "Interrupted during CDS training run", e );
+		}
+
+		if( !Files.exists( archivePath ) ) {
+			logger.warn( "CDS training run of {} did not create an archive, the application will launch without one. See {}", applicationName, logPath );
+			return false;
+		}
+
+		logger.info( "Created CDS archive {}", archivePath.getFileName() );
+		return true;
+	}
+
+	/**
+	 * Waits until a GET request to [url] receives a response (of any status) or [timeoutSeconds] passes
+	 */
+	private static void awaitURL( final Process process, final String url, final int timeoutSeconds ) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( timeoutSeconds );
+		final HttpClient client = HttpClient.newBuilder().connectTimeout( Duration.ofSeconds( 5 ) ).build();
+		final HttpRequest request = HttpRequest.newBuilder( URI.create( url ) ).timeout( Duration.ofSeconds( timeoutSeconds ) ).build();
+
+		while( process.isAlive() && System.nanoTime() < deadline ) {
+			try {
+				final HttpResponse<Void> response = client.send( request, HttpResponse.BodyHandlers.discarding() );
+				logger.info( "Training request to {} returned status {}", url, response.statusCode() );
+				return;
+			}
+			catch( final IOException e ) {
+				// The application isn't accepting requests yet
+				Thread.sleep( 1000 );
+			}
+		}
+
+		logger.warn( "Training request to {} did not succeed within {} seconds", url, timeoutSeconds );
+	}
+
+	/**
+	 * @return The feature version (e.g. 21) of the Java runtime at [jvm]. 0 if it can't be determined.
+	 */
+	private static int javaVersion( final String jvm ) {
+		try {
+			final Process process = new ProcessBuilder( jvm, "-XshowSettings:properties", "-version" )
+					.redirectErrorStream( true )
+					.start();
+
+			final String output = new String( process.getInputStream().readAllBytes(), StandardCharsets.UTF_8 );
+			process.waitFor();
+
+			for( final String line : output.lines().toList() ) {
+				final String trimmedLine = line.trim();
+
+				if( trimmedLine.startsWith( "java.specification.version = " ) ) {
+					final String version = trimmedLine.substring( "java.specification.version = ".length() );
+
+					// Pre-9 versions are reported as 1.x
+					return Integer.parseInt( version.startsWith( "1." ) ? version.substring( 2 ) : version );
+				}
+			}
+		}
+		catch( final IOException | NumberFormatException e ) {
+			logger.warn( "Unable to determine the Java version of {}: {}", jvm, e.getMessage() );
+		}
+		catch( final InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( e );
+		}
+
+		return 0;
+	}
+}
@@ -0,0 +1,252 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Works out where each file in a components folder ends up when the folder is flattened (see Util.copyContentsOfDirectoryToDirectoryFlatten() for the rules).
+ *
+ * The tree is walked using fork/join: every folder is listed, and every bundle walked, in a task of it's own. Nothing is copied while walking,
+ * so the complete mapping is known before any copying starts. This lets us report every pair of sources that would overwrite each other
+ * (for example two components with the same name in different group folders) and lets the copying create each destination directory only once.
+ */
+
+public class ComponentFlattener {
+
+	private static final Logger logger = LoggerFactory.getLogger( ComponentFlattener.class );
+
+	/**
+	 * Orders paths the same way regardless of platform, like the packaging plan does
+	 */
+	private static final Comparator<Path> PATH_ORDER = Comparator.comparing( Path::toString );
+
+	/**
+	 * Multiple [sources] flattening to the same [destination], in path order
+	 */
+	public record Collision( Path destination, List<Path> sources ) {
+
+		/**
+		 * @return The source that ends up at the destination (the last one in path order)
+		 */
+		public Path winner() {
+			return sources.get( sources.size() - 1 );
+		}
+	}
+
+	/**
+	 * The result of flattening a folder
+	 *
+	 * @param files The source of every file in the flattened result, keyed by destination, in destination order
+	 * @param collisions Destinations that more than one source flattens to, in destination order
+	 */
+	public record Flattening( SortedMap<Path, Path> files, List<Collision> collisions ) {
+
+		/**
+		 * Passes each (source, destination) pair to [copyFunction], in destination order
+		 */
+		public void forEach( final BiConsumer<Path, Path> copyFunction ) {
+			Objects.requireNonNull( copyFunction );
+			files.forEach( ( destination, source ) -> copyFunction.accept( source, destination ) );
+		}
+
+		/**
+		 * @return The distinct parent directories of every destination, in path order
+		 */
+		public List<Path> destinationDirectories() {
+			return files.keySet()
+					.stream()
+					.map( Path::getParent )
+					.filter( Objects::nonNull )
+					.distinct()
+					.sorted( PATH_ORDER )
+					.toList();
+		}
+
+		/**
+		 * @return A description of every collision, one line per destination, listing all it's sources
+		 */
+		public List<String> collisionReport() {
+			return collisions
+					.stream()
+					.map( collision -> "%s is flattened from %s".formatted( collision.destination(), collision.sources() ) )
+					.toList();
+		}
+
+		/**
+		 * Logs a warning listing every collision, or if [failOnCollisions] is set, fails listing them
+		 *
+		 * @return this, for chaining
+		 * @throws IllegalStateException If [failOnCollisions] is set and any sources collide
+		 */
+		public Flattening checkCollisions( final boolean failOnCollisions ) {
+			if( collisions.isEmpty() ) {
+				return this;
+			}
+
+			final String summary = "%d files are flattened to the same destination as another file".formatted( collisions.size() );
+
+			if( failOnCollisions ) {
+				throw new IllegalStateException( summary + ":\n" + String.join( "\n", collisionReport() ) );
+			}
+
+			logger.warn( "{}. The last one in path order wins:", summary );
+			collisionReport().forEach( logger::warn );
+			return this;
+		}
+	}
+
+	/**
+	 * Maps every file in [sourceDirectory] to it's destination when flattened into [destinationDirectory].
+	 *
+	 * Directories with names ending with [directorySuffixesToNotFlatten] are bundles, copied in their entirety. Directories with names ending with
+	 * [directorySuffixesToFlattenInto] are preserved at the destination, with their contents flattened into them.
+	 */
+	public static Flattening flatten( final Path sourceDirectory, final Path destinationDirectory, final Collection<String> directorySuffixesToNotFlatten, final Collection<String> directorySuffixesToFlattenInto ) {
+		Objects.requireNonNull( sourceDirectory );
+		Objects.requireNonNull( destinationDirectory );
+		Objects.requireNonNull( directorySuffixesToNotFlatten );
+		Objects.requireNonNull( directorySuffixesToFlattenInto );
+
+		final List<Mapping> mappings = ForkJoinPool.commonPool().invoke( new FolderTask( sourceDirectory, destinationDirectory, directorySuffixesToNotFlatten, directorySuffixesToFlattenInto ) );
+
+		// Group the sources by destination. Sorting them first makes the winner of a collision independent of the order the filesystem lists files in.
+		final Map<Path, List<Path>> sourcesByDestination = new TreeMap<>( PATH_ORDER );
+
+		mappings
+				.stream()
+				.sorted( Comparator.comparing( Mapping::source, PATH_ORDER ) )
+				.forEach( mapping -> sourcesByDestination.computeIfAbsent( mapping.destination(), destination -> new ArrayList<>() ).add( mapping.source() ) );
+
+		final SortedMap<Path, Path> files = new TreeMap<>( PATH_ORDER );
+		final List<Collision> collisions = new ArrayList<>();
+
+		sourcesByDestination.forEach( ( destination, sources ) -> {
+			files.put( destination, sources.get( sources.size() - 1 ) );
+
+			if( sources.size() > 1 ) {
+				collisions.add( new Collision( destination, List.copyOf( sources ) ) );
+			}
+		} );
+
+		return new Flattening( Collections.unmodifiableSortedMap( files ), Collections.unmodifiableList( collisions ) );
+	}
+
+	/**
+	 * A file at [source] flattened to [destination]
+	 */
+	private record Mapping( Path source, Path destination ) {}
+
+	/**
+	 * Flattens the contents of [folder] into [destination], forking a task for each subfolder and bundle
+	 */
+	private static class FolderTask extends RecursiveTask<List<Mapping>> {
+
+		private final Path _folder;
+		private final Path _destination;
+		private final Collection<String> _bundleSuffixes;
+		private final Collection<String> _flattenIntoSuffixes;
+
+		FolderTask( final Path folder, final Path destination, final Collection<String> bundleSuffixes, final Collection<String> flattenIntoSuffixes ) {
+			_folder = folder;
+			_destination = destination;
+			_bundleSuffixes = bundleSuffixes;
+			_flattenIntoSuffixes = flattenIntoSuffixes;
+		}
+
+		@Override
+		protected List<Mapping> compute() {
+			final List<Mapping> mappings = new ArrayList<>();
+			final List<RecursiveTask<List<Mapping>>> subtasks = new ArrayList<>();
+
+			// The folder itself is never matched against our suffix rules, only it's contents. That's what keeps us from descending into an .lproj forever.
+			try( final DirectoryStream<Path> children = Files.newDirectoryStream( _folder ) ) {
+				for( final Path child : children ) {
+					final String name = child.getFileName().toString();
+
+					// Like walking the tree, links to directories are treated as files rather than followed
+					if( !Files.isDirectory( child, LinkOption.NOFOLLOW_LINKS ) ) {
+						mappings.add( new Mapping( child, _destination.resolve( name ) ) );
+					}
+					else if( hasAnyOfSuffixes( name, _bundleSuffixes ) ) {
+						subtasks.add( new BundleTask( child, _destination.resolve( name ) ) );
+					}
+					else if( hasAnyOfSuffixes( name, _flattenIntoSuffixes ) ) {
+						subtasks.add( new FolderTask( child, _destination.resolve( name ), _bundleSuffixes, _flattenIntoSuffixes ) );
+					}
+					else {
+						subtasks.add( new FolderTask( child, _destination, _bundleSuffixes, _flattenIntoSuffixes ) );
+					}
+				}
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+
+			for( final RecursiveTask<List<Mapping>> subtask : invokeAll( subtasks ) ) {
+				mappings.addAll( subtask.join() );
+			}
+
+			return mappings;
+		}
+	}
+
+	/**
+	 * Maps the contents of the bundle at [bundle] to [destination], maintaining it's hierarchy
+	 */
+	private static class BundleTask extends RecursiveTask<List<Mapping>> {
+
+		private final Path _bundle;
+		private final Path _destination;
+
+		BundleTask( final Path bundle, final Path destination ) {
+			_bundle = bundle;
+			_destination = destination;
+		}
+
+		@Override
+		protected List<Mapping> compute() {
+			try( final Stream<Path> paths = Files.walk( _bundle ) ) {
+				return paths
+						.filter( path -> !Files.isDirectory( path ) )
+						.map( path -> new Mapping( path, _destination.resolve( _bundle.relativize( path ) ) ) )
+						.toList();
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+	}
+
+	/**
+	 * @return true if [name] ends with a period followed by any of [suffixes]
+	 */
+	private static boolean hasAnyOfSuffixes( final String name, final Collection<String> suffixes ) {
+		for( final String suffix : suffixes ) {
+			if( name.endsWith( "." + suffix ) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
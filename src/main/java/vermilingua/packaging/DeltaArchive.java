@@ -0,0 +1,194 @@
+package vermilingua.packaging;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Creates a delta archive of a WOA, containing only the files that were added or changed since a previous release of it.
+ *
+ * Along with the files, the archive's root contains two lists for the WOA named App.woa:
+ *
+ * - App.woa.deleted: Paths of files that were present in the previous release but no longer are, one per line
+ * - App.woa.sha256: The SHA-256 of every file in the new WOA, in the format used by sha256sum, so the result of applying the delta can be verified with `sha256sum -c App.woa.sha256`
+ *
+ * All paths are relative to the directory containing the WOA, so the delta is applied by extracting it in that directory and deleting the listed files.
+ */
+
+public class DeltaArchive {
+
+	/**
+	 * Suffix of the list of deleted files (appended to the WOA's name)
+	 */
+	public static final String DELETED_SUFFIX = ".deleted";
+
+	/**
+	 * Suffix of the list of checksums (appended to the WOA's name)
+	 */
+	public static final String CHECKSUMS_SUFFIX = ".sha256";
+
+	/**
+	 * The number of files that went into the delta
+	 */
+	public record Summary( int changed, int deleted, int unchanged ) {}
+
+	/**
+	 * Writes a delta archive of the WOA at [woaPath] to [deltaPath], relative to the previous release of the WOA at [basePath] (a WOA directory or an archive of one)
+	 */
+	public static Summary write( final Path woaPath, final Path basePath, final Path deltaPath, final ArchiveFormat format, final ArchiveWriter.Settings settings ) {
+		Objects.requireNonNull( woaPath );
+		Objects.requireNonNull( basePath );
+		Objects.requireNonNull( deltaPath );
+		Objects.requireNonNull( format );
+		Objects.requireNonNull( settings );
+
+		if( !Files.exists( basePath ) ) {
+			throw new IllegalArgumentException( "The previous release to create a delta against (%s) does not exist".formatted( basePath ) );
+		}
+
+		final Map<String, String> baseChecksums = Files.isDirectory( basePath ) ? directoryChecksums( basePath ) : archiveChecksums( basePath );
+		final Map<String, String> checksums = directoryChecksums( woaPath );
+
+		final String rootName = woaPath.getFileName().toString();
+		final List<String> deleted = new ArrayList<>();
+		int changed = 0;
+
+		try( final ArchiveWriter writer = ArchiveWriter.open( deltaPath, format, settings ) ) {
+			for( final Map.Entry<String, String> entry : checksums.entrySet() ) {
+				if( !entry.getValue().equals( baseChecksums.get( entry.getKey() ) ) ) {
+					final Path path = woaPath.resolve( entry.getKey() );
+					writer.putFile( rootName + "/" + entry.getKey(), path, Files.isExecutable( path ) );
+					changed++;
+				}
+			}
+
+			for( final String name : baseChecksums.keySet() ) {
+				if( !checksums.containsKey( name ) ) {
+					deleted.add( rootName + "/" + name );
+				}
+			}
+
+			final StringBuilder checksumList = new StringBuilder();
+
+			for( final Map.Entry<String, String> entry : checksums.entrySet() ) {
+				checksumList.append( entry.getValue() ).append( "  " ).append( rootName ).append( '/' ).append( entry.getKey() ).append( '\n' );
+			}
+
+			writer.putBytes( rootName + DELETED_SUFFIX, lines( deleted ).getBytes( StandardCharsets.UTF_8 ), false );
+			writer.putBytes( rootName + CHECKSUMS_SUFFIX, checksumList.toString().getBytes( StandardCharsets.UTF_8 ), false );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return new Summary( changed, deleted.size(), checksums.size() - changed );
+	}
+
+	/**
+	 * @return The SHA-256 of every file in the WOA directory at [woaPath], keyed by path relative to the WOA, in order of path
+	 */
+	private static Map<String, String> directoryChecksums( final Path woaPath ) {
+		final Map<String, String> checksums = new TreeMap<>();
+
+		try( final Stream<Path> paths = Files.walk( woaPath ) ) {
+			paths
+					.filter( Files::isRegularFile )
+					.forEach( path -> add( checksums, woaPath.relativize( path ).toString().replace( '\\', '/' ), Util.sha256( path ) ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return checksums;
+	}
+
+	/**
+	 * @return The SHA-256 of every file in the archived WOA at [archivePath], keyed by path relative to the WOA (the archive's root folder), in order of path
+	 */
+	private static Map<String, String> archiveChecksums( final Path archivePath ) {
+		final ArchiveFormat format = ArchiveFormat.ofFilename( archivePath.getFileName().toString() );
+		final Map<String, String> checksums = new TreeMap<>();
+
+		try {
+			if( format == ArchiveFormat.Zip ) {
+				try( final ZipFile zipFile = ZipFile.builder().setPath( archivePath ).get() ) {
+					for( final ZipArchiveEntry entry : Collections.list( zipFile.getEntries() ) ) {
+						if( !entry.isDirectory() && !entry.isUnixSymlink() ) {
+							try( final InputStream stream = zipFile.getInputStream( entry ) ) {
+								add( checksums, withoutRoot( entry.getName() ), Util.sha256( stream ) );
+							}
+						}
+					}
+				}
+			}
+			else {
+				try( final TarArchiveInputStream tarStream = new TarArchiveInputStream( decompressedStream( archivePath, format ) ) ) {
+					TarArchiveEntry entry;
+
+					while( (entry = tarStream.getNextEntry()) != null ) {
+						if( entry.isFile() ) {
+							add( checksums, withoutRoot( entry.getName() ), Util.sha256( tarStream ) );
+						}
+					}
+				}
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return checksums;
+	}
+
+	private static InputStream decompressedStream( final Path archivePath, final ArchiveFormat format ) throws IOException {
+		final InputStream in = new BufferedInputStream( Files.newInputStream( archivePath ) );
+
+		return switch( format ) {
+			case TarGz -> GzipCompressorInputStream.builder().setInputStream( in ).setDecompressConcatenated( true ).get(); // We write a single gzip member, but base archives created by other tools (pigz, concatenated files) may contain several
+			case TarZst -> new ZstdInputStream( in );
+			case Tar -> in;
+			case Zip -> throw new IllegalArgumentException( "zip archives aren't streamed" );
+		};
+	}
+
+	/**
+	 * Adds [checksum] for the file at [name], ignoring our own bookkeeping files
+	 */
+	private static void add( final Map<String, String> checksums, final String name, final String checksum ) {
+		if( !name.isEmpty() && !name.equals( WOAManifest.FILENAME ) ) {
+			checksums.put( name, checksum );
+		}
+	}
+
+	/**
+	 * @return [entryName] without it's first path element (the WOA's folder). An empty string for entries not in a folder.
+	 */
+	private static String withoutRoot( final String entryName ) {
+		final String name = entryName.startsWith( "./" ) ? entryName.substring( 2 ) : entryName;
+		final int slashIndex = name.indexOf( '/' );
+		return slashIndex == -1 ? "" : name.substring( slashIndex + 1 );
+	}
+
+	private static String lines( final List<String> lines ) {
+		return lines.isEmpty() ? "" : String.join( "\n", lines ) + "\n";
+	}
+}
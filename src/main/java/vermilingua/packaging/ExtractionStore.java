@@ -0,0 +1,331 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A store of folders extracted from jars (like a framework's WebServerResources) that's kept between builds, so a version of a framework only gets inflated once,
+ * however many projects and builds use it. Stored files are then linked or copied into the WOA. Entries are addressed by the SHA-256 of the jar they were extracted from.
+ *
+ * Layout of the store:
+ *
+ * - [folderName]/[sha256]/content/[folderName]/... : The extracted files of an entry
+ * - [folderName]/[sha256]/size : Total size of an entry's files in bytes
+ * - .tmp/ : Entries being extracted or deleted
+ *
+ * Multiple builds (threads or processes) can use the store at once. Entries are extracted into .tmp and atomically renamed into place, so an entry is either
+ * complete or absent. Every use of an entry updates it's modification time. Once the store exceeds it's maximum size, the least recently used entries are evicted by
+ * renaming them into .tmp before deleting them, but entries used within the last EVICTION_GRACE_PERIOD are left alone, so an entry is never removed while a build is using it.
+ */
+
+public class ExtractionStore {
+
+	private static final Logger logger = LoggerFactory.getLogger( ExtractionStore.class );
+
+	/**
+	 * Entries used (and temporary files created) more recently than this are never evicted
+	 */
+	private static final Duration EVICTION_GRACE_PERIOD = Duration.ofMinutes( 30 );
+
+	private static final String TEMPORARY_FOLDER_NAME = ".tmp";
+	private static final String CONTENT_FOLDER_NAME = "content";
+	private static final String SIZE_FILENAME = "size";
+
+	private final Path _rootPath;
+
+	/**
+	 * Size (in bytes) the store gets evicted down to
+	 */
+	private final long _maximumBytes;
+
+	/**
+	 * Checksums of the jars we've been asked about, so each jar is only hashed once while we live
+	 */
+	private final Map<JarCache.Key, String> _checksums = new ConcurrentHashMap<>();
+
+	private final LongAdder _hits = new LongAdder();
+	private final LongAdder _misses = new LongAdder();
+	private final LongAdder _evictions = new LongAdder();
+
+	public ExtractionStore( final Path rootPath, final long maximumBytes ) {
+		Objects.requireNonNull( rootPath );
+
+		if( maximumBytes < 0 ) {
+			throw new IllegalArgumentException( "maximumBytes can't be negative" );
+		}
+
+		_rootPath = rootPath.toAbsolutePath().normalize();
+		_maximumBytes = maximumBytes;
+	}
+
+	/**
+	 * @return The default location of the store, ~/.m2/vermilingua-cache
+	 */
+	public static Path defaultRootPath() {
+		return Path.of( System.getProperty( "user.home" ), ".m2", "vermilingua-cache" );
+	}
+
+	/**
+	 * Places the files in the folder named [folderName] in the jar at [jarPath] in [destinationPath] (at [destinationPath]/[folderName]/..., like Util.copyFolderFromJarToPath())
+	 * using [copyFunction] (source, destination), extracting them into the store first if they're not already there. Invokes [onJarOpened] if the jar had to be read.
+	 *
+	 * @return The paths of the files placed
+	 */
+	public List<Path> copyFolderFromJarToPath( final String folderName, final Path jarPath, final Path destinationPath, final BiConsumer<Path, Path> copyFunction, final Runnable onJarOpened ) {
+		Objects.requireNonNull( destinationPath );
+		Objects.requireNonNull( copyFunction );
+
+		final List<Path> writtenPaths = new ArrayList<>();
+
+		storedFiles( folderName, jarPath, onJarOpened ).forEach( ( name, storedPath ) -> {
+			final Path targetPath = destinationPath.resolve( name );
+			Util.createParentDirectories( targetPath );
+			copyFunction.accept( storedPath, targetPath );
+			writtenPaths.add( targetPath );
+		} );
+
+		return writtenPaths;
+	}
+
+	/**
+	 * @return The stored files of the folder named [folderName] in the jar at [jarPath], keyed by their name in the jar ([folderName]/...), in order of name.
+	 * Extracts the folder into the store first if it's not already there, invoking [onJarOpened].
+	 */
+	public Map<String, Path> storedFiles( final String folderName, final Path jarPath, final Runnable onJarOpened ) {
+		Objects.requireNonNull( folderName );
+		Objects.requireNonNull( jarPath );
+		Objects.requireNonNull( onJarOpened );
+
+		final Path contentPath = entry( folderName, jarPath, onJarOpened ).resolve( CONTENT_FOLDER_NAME );
+		final Map<String, Path> files = new LinkedHashMap<>();
+
+		try( final Stream<Path> paths = Files.walk( contentPath ) ) {
+			paths
+					.filter( Files::isRegularFile )
+					.sorted( Comparator.comparing( path -> contentPath.relativize( path ).toString() ) )
+					.forEach( path -> files.put( contentPath.relativize( path ).toString().replace( '\\', '/' ), path ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return files;
+	}
+
+	/**
+	 * @return The path of the entry for [folderName] of the jar at [jarPath], marked as used. Extracted into the store first if missing.
+	 */
+	private Path entry( final String folderName, final Path jarPath, final Runnable onJarOpened ) {
+		final String checksum = _checksums.computeIfAbsent( JarCache.Key.of( jarPath ), key -> Util.sha256( jarPath ) );
+		final Path entryPath = _rootPath.resolve( folderName ).resolve( checksum );
+
+		if( markUsed( entryPath ) ) {
+			_hits.increment();
+			return entryPath;
+		}
+
+		_misses.increment();
+
+		final Path temporaryPath = temporaryPath( checksum );
+
+		try {
+			onJarOpened.run();
+			final List<Path> extractedPaths = Util.copyFolderFromJarToPath( folderName, jarPath, temporaryPath.resolve( CONTENT_FOLDER_NAME ) );
+
+			long size = 0;
+
+			for( final Path extractedPath : extractedPaths ) {
+				size += Util.size( extractedPath );
+			}
+
+			// The folder isn't created by the extraction if the jar has no files in it
+			Files.createDirectories( temporaryPath.resolve( CONTENT_FOLDER_NAME ) );
+			Util.writeStringToPath( Long.toString( size ), temporaryPath.resolve( SIZE_FILENAME ) );
+			Files.createDirectories( entryPath.getParent() );
+
+			try {
+				Files.move( temporaryPath, entryPath, StandardCopyOption.ATOMIC_MOVE );
+				logger.debug( "Stored {} of {} in {}", folderName, jarPath.getFileName(), entryPath );
+			}
+			catch( final IOException e ) {
+				// Another build stored the same entry while we were extracting it, and we can just use theirs
+				if( !markUsed( entryPath ) ) {
+					throw e;
+				}
+
+				Util.deleteRecursively( temporaryPath );
+			}
+		}
+		catch( final IOException e ) {
+			Util.deleteRecursively( temporaryPath );
+			throw new UncheckedIOException( e );
+		}
+		catch( final RuntimeException e ) {
+			Util.deleteRecursively( temporaryPath );
+			throw e;
+		}
+
+		evict();
+		return entryPath;
+	}
+
+	/**
+	 * Marks the entry at [entryPath] as used now, keeping it from getting evicted for a while
+	 *
+	 * @return false if the entry doesn't exist
+	 */
+	private static boolean markUsed( final Path entryPath ) {
+		try {
+			Files.setLastModifiedTime( entryPath, FileTime.from( Instant.now() ) );
+			return true;
+		}
+		catch( final NoSuchFileException e ) {
+			return false;
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return A new, unique path in the store's temporary folder, named after [name]
+	 */
+	private Path temporaryPath( final String name ) {
+		final Path temporaryFolderPath = _rootPath.resolve( TEMPORARY_FOLDER_NAME );
+
+		try {
+			Files.createDirectories( temporaryFolderPath );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return temporaryFolderPath.resolve( name + "-" + UUID.randomUUID() );
+	}
+
+	/**
+	 * An entry in the store, last used at [lastUsed]
+	 */
+	private record Entry( Path path, long size, FileTime lastUsed ) {}
+
+	/**
+	 * Evicts the least recently used entries until the store is within it's maximum size, apart from entries within the grace period.
+	 * Also cleans up temporary files left behind by builds that didn't finish.
+	 */
+	private void evict() {
+		final FileTime graceLimit = FileTime.from( Instant.now().minus( EVICTION_GRACE_PERIOD ) );
+		final List<Entry> entries = new ArrayList<>();
+		long totalSize = 0;
+
+		try( final Stream<Path> folders = Files.list( _rootPath ) ) {
+			for( final Path folder : folders.filter( Files::isDirectory ).toList() ) {
+				final boolean temporary = folder.getFileName().toString().equals( TEMPORARY_FOLDER_NAME );
+
+				try( final Stream<Path> entryPaths = Files.list( folder ) ) {
+					for( final Path entryPath : entryPaths.toList() ) {
+						try {
+							final FileTime lastUsed = Files.getLastModifiedTime( entryPath );
+
+							if( temporary ) {
+								if( lastUsed.compareTo( graceLimit ) < 0 ) {
+									Util.deleteRecursively( entryPath );
+								}
+							}
+							else {
+								final long size = Long.parseLong( Files.readString( entryPath.resolve( SIZE_FILENAME ), StandardCharsets.UTF_8 ).trim() );
+								entries.add( new Entry( entryPath, size, lastUsed ) );
+								totalSize += size;
+							}
+						}
+						catch( final IOException | UncheckedIOException | NumberFormatException e ) {
+							// Another build is evicting (or just stored) the same entry
+							logger.debug( "Skipping {} while evicting: {}", entryPath, e.getMessage() );
+						}
+					}
+				}
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		entries.sort( Comparator.comparing( Entry::lastUsed ) );
+
+		for( final Entry entry : entries ) {
+			if( totalSize <= _maximumBytes || entry.lastUsed().compareTo( graceLimit ) >= 0 ) {
+				break;
+			}
+
+			// Moved out of the way first, so no build ever sees a partially deleted entry
+			final Path evictedPath = temporaryPath( "evicted" );
+
+			try {
+				// Another build might have started using the entry since we listed it
+				if( Files.getLastModifiedTime( entry.path() ).compareTo( graceLimit ) >= 0 ) {
+					continue;
+				}
+
+				Files.move( entry.path(), evictedPath, StandardCopyOption.ATOMIC_MOVE );
+				Util.deleteRecursively( evictedPath );
+				totalSize -= entry.size();
+				_evictions.increment();
+				logger.debug( "Evicted {} from the extraction store", entry.path() );
+			}
+			catch( final IOException | UncheckedIOException e ) {
+				logger.debug( "Unable to evict {}: {}", entry.path(), e.getMessage() );
+			}
+		}
+	}
+
+	public Path rootPath() {
+		return _rootPath;
+	}
+
+	/**
+	 * @return Number of entries found in the store
+	 */
+	public long hits() {
+		return _hits.sum();
+	}
+
+	/**
+	 * @return Number of entries extracted into the store
+	 */
+	public long misses() {
+		return _misses.sum();
+	}
+
+	/**
+	 * @return Number of entries evicted from the store
+	 */
+	public long evictions() {
+		return _evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "%s: %d hits, %d misses, %d evictions".formatted( _rootPath, hits(), misses(), evictions() );
+	}
+}
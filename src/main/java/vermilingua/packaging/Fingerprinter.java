@@ -0,0 +1,145 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import vermilingua.packaging.PackageWOApplication.WOA;
+
+/**
+ * Creates content-hashed ("fingerprinted") copies of a WOA's webserver resources, for example app.3f9c2a1b.css for app.css.
+ *
+ * A fingerprinted file's name changes whenever it's content does, so it can be served with far-future cache headers.
+ * The copies are placed alongside the originals, and a manifest mapping each original's name to the fingerprinted one
+ * is written to the root of the WOA's WebServerResources.
+ */
+
+public class Fingerprinter {
+
+	/**
+	 * Name of the fingerprint manifest, in the root of the WOA's WebServerResources
+	 */
+	public static final String MANIFEST_FILENAME = "fingerprints.json";
+
+	/**
+	 * Number of hex characters of the content's SHA-256 used in fingerprinted names
+	 */
+	private static final int HASH_LENGTH = 8;
+
+	/**
+	 * Fingerprints the application's and the embedded frameworks' webserver resources in [woa]
+	 *
+	 * @param manifest The manifest of an incremental build, used to record the fingerprinted files. null if we're performing a full build
+	 *
+	 * @return A map of each resource's path to the path of it's fingerprinted copy, both relative to the WOA's Contents folder
+	 */
+	public static Map<String, String> fingerprint( final WOA woa, final WOAManifest manifest ) {
+		Objects.requireNonNull( woa );
+
+		final Map<String, String> fingerprints = new TreeMap<>();
+		final Path manifestPath = woa.webserverResourcesPath().resolve( MANIFEST_FILENAME );
+
+		for( final Path directory : List.of( woa.webserverResourcesPath(), woa.frameworksPath() ) ) {
+			for( final Path path : files( directory ) ) {
+				if( path.equals( manifestPath ) || Precompressor.isPrecompressedVariant( path ) ) {
+					continue;
+				}
+
+				final String hash = Util.sha256( path ).substring( 0, HASH_LENGTH );
+				final String filename = path.getFileName().toString();
+
+				// This is a fingerprinted copy made by a previous build (which we know, since it's named after it's own content)
+				if( filename.contains( "." + hash ) ) {
+					continue;
+				}
+
+				final Path fingerprintedPath = path.resolveSibling( fingerprintedFilename( filename, hash ) );
+
+				// The copy has the same content as the original, so a hard link does just as well
+				if( manifest != null ) {
+					manifest.copyFile( path, fingerprintedPath, LinkStrategy.Auto::apply );
+				}
+				else if( !Files.exists( fingerprintedPath ) ) {
+					LinkStrategy.Auto.apply( path, fingerprintedPath );
+				}
+
+				fingerprints.put( relativeName( woa, path ), relativeName( woa, fingerprintedPath ) );
+			}
+		}
+
+		final String json = json( fingerprints );
+
+		if( manifest != null ) {
+			manifest.writeString( json, manifestPath );
+		}
+		else {
+			Util.writeStringToPath( json, manifestPath );
+		}
+
+		return fingerprints;
+	}
+
+	/**
+	 * @return [filename] with [hash] inserted before the extension (app.css -> app.3f9c2a1b.css). Files without an extension get the hash appended.
+	 */
+	static String fingerprintedFilename( final String filename, final String hash ) {
+		final int periodIndex = filename.lastIndexOf( '.' );
+
+		// A leading period indicates a hidden file, not an extension
+		if( periodIndex < 1 ) {
+			return filename + "." + hash;
+		}
+
+		return filename.substring( 0, periodIndex ) + "." + hash + filename.substring( periodIndex );
+	}
+
+	/**
+	 * @return The regular files in [directory] (and it's subdirectories) in a stable order. Empty if the directory doesn't exist.
+	 */
+	private static List<Path> files( final Path directory ) {
+		if( !Files.exists( directory ) ) {
+			return List.of();
+		}
+
+		try( final Stream<Path> paths = Files.walk( directory ) ) {
+			return paths
+					.filter( Files::isRegularFile )
+					.sorted()
+					.toList();
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	private static String relativeName( final WOA woa, final Path path ) {
+		return woa.contentsPath().relativize( path ).toString().replace( '\\', '/' );
+	}
+
+	/**
+	 * @return [fingerprints] as a JSON object, one entry per line
+	 */
+	private static String json( final Map<String, String> fingerprints ) {
+		final StringBuilder b = new StringBuilder();
+		b.append( "{\n" );
+
+		int i = 0;
+
+		for( final Map.Entry<String, String> entry : fingerprints.entrySet() ) {
+			b.append( "\t" );
+			b.append( Util.jsonString( entry.getKey() ) );
+			b.append( ": " );
+			b.append( Util.jsonString( entry.getValue() ) );
+			b.append( ++i < fingerprints.size() ? ",\n" : "\n" );
+		}
+
+		b.append( "}\n" );
+		return b.toString();
+	}
+}
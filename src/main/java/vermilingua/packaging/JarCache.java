@@ -0,0 +1,400 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Caches what we read from dependency jars (their list of entries and the content of folders we extract, like WebServerResources), so modules packaged
+ * in the same build don't each read the same framework jars again. Shared by every module in a Maven session, which can be packaging modules on multiple threads.
+ *
+ * Jars are identified by path, size and modification time, so a jar that gets rebuilt (like a snapshot) is read again. The entry lists and folder contents held are bounded
+ * by an (estimated) total size in bytes, evicting the least recently used ones first. A folder that doesn't fit within the bound is never held, but read from the jar when needed.
+ *
+ * If multiple threads request the same jar at the same time, it's read once, with the other threads waiting for the result.
+ */
+
+public class JarCache {
+
+	/**
+	 * Identifies the content of the jar at [jarPath]
+	 */
+	public record Key( Path jarPath, long size, long lastModified ) {
+
+		public static Key of( final Path jarPath ) {
+			Objects.requireNonNull( jarPath );
+
+			try {
+				final BasicFileAttributes attributes = Files.readAttributes( jarPath, BasicFileAttributes.class );
+				return new Key( jarPath.toAbsolutePath().normalize(), attributes.size(), attributes.lastModifiedTime().toMillis() );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+	}
+
+	/**
+	 * A file in a jar, with the [size] and [crc] recorded in the jar's central directory
+	 */
+	public record FileEntry( String name, long size, long crc ) {}
+
+	/**
+	 * The files in a jar, in the order they're stored
+	 */
+	public record Scan( List<FileEntry> files ) {
+
+		/**
+		 * @return The files in the folder named [folderName] (at any depth), in the order they're stored
+		 */
+		public List<FileEntry> filesInFolder( final String folderName ) {
+			final String prefix = folderName + "/";
+			return files.stream().filter( file -> file.name().startsWith( prefix ) ).toList();
+		}
+
+		/**
+		 * @return true if the folder named [folderName] contains any files
+		 */
+		public boolean containsFilesInFolder( final String folderName ) {
+			final String prefix = folderName + "/";
+			return files.stream().anyMatch( file -> file.name().startsWith( prefix ) );
+		}
+	}
+
+	/**
+	 * Estimated memory used per cached jar entry (beyond the characters of it's name)
+	 */
+	private static final long ENTRY_OVERHEAD = 64;
+
+	/**
+	 * Maximum (estimated) bytes of entry lists and folder contents held
+	 */
+	private final long _maximumBytes;
+
+	/**
+	 * Cached values keyed by ScanKey or FolderKey, in least recently used order. Guarded by this.
+	 */
+	private final LinkedHashMap<Object, Cached> _cached = new LinkedHashMap<>( 16, 0.75f, true );
+
+	/**
+	 * Sum of the weights of everything in _cached. Guarded by this.
+	 */
+	private long _cachedBytes;
+
+	private final LongAdder _hits = new LongAdder();
+	private final LongAdder _misses = new LongAdder();
+	private final LongAdder _evictions = new LongAdder();
+
+	/**
+	 * @param maximumBytes Maximum (estimated) bytes of entry lists and folder contents to hold. With 0 nothing is held, but concurrent requests for the same jar are still only read once.
+	 */
+	public JarCache( final long maximumBytes ) {
+		if( maximumBytes < 0 ) {
+			throw new IllegalArgumentException( "maximumBytes can't be negative" );
+		}
+
+		_maximumBytes = maximumBytes;
+	}
+
+	/**
+	 * @return true if the cache can hold anything. If not, callers that would scan a jar before reading from it should read it directly instead, since the scan isn't kept.
+	 */
+	public boolean isEnabled() {
+		return _maximumBytes > 0;
+	}
+
+	private record ScanKey( Key jar ) {}
+
+	private record FolderKey( Key jar, String folderName ) {}
+
+	/**
+	 * A value in the cache. The future is completed once the value has been read, and [weight] is set at the same time.
+	 */
+	private static class Cached {
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+		long weight;
+	}
+
+	/**
+	 * @return The files in the jar at [jarPath]. Invokes [onJarOpened] if the jar had to be read.
+	 */
+	public Scan scan( final Path jarPath, final Runnable onJarOpened ) {
+		Objects.requireNonNull( jarPath );
+		Objects.requireNonNull( onJarOpened );
+
+		return scan( Key.of( jarPath ), onJarOpened );
+	}
+
+	/**
+	 * @return The content of every file in the folder named [folderName] in the jar at [jarPath], keyed by entry name, in the order they're stored.
+	 * null if the folder's content is too large to be held, in which case the caller must read it from the jar. Invokes [onJarOpened] if the jar had to be read.
+	 */
+	public Map<String, byte[]> folderContents( final Path jarPath, final String folderName, final Runnable onJarOpened ) {
+		Objects.requireNonNull( jarPath );
+		Objects.requireNonNull( folderName );
+		Objects.requireNonNull( onJarOpened );
+
+		final Key key = Key.of( jarPath );
+		return folderContents( key, scan( key, onJarOpened ).filesInFolder( folderName ), folderName, onJarOpened );
+	}
+
+	/**
+	 * Same as Util.copyFolderFromJarToPath( folderName, jarPath, destinationPath ), but using the cache. Jars without files in the folder aren't opened at all,
+	 * and folders that are held in the cache are written without reading the jar. If the cache isn't enabled, the jar is read once, just like Util does. Invokes [onJarOpened] if the jar had to be read.
+	 *
+	 * @return The paths of the files written
+	 */
+	public List<Path> copyFolderFromJarToPath( final String folderName, final Path jarPath, final Path destinationPath, final Runnable onJarOpened ) {
+		Objects.requireNonNull( folderName );
+		Objects.requireNonNull( jarPath );
+		Objects.requireNonNull( destinationPath );
+		Objects.requireNonNull( onJarOpened );
+
+		// Nothing can be held, so scanning the jar first would only mean opening it twice
+		if( !isEnabled() ) {
+			onJarOpened.run();
+			return Util.copyFolderFromJarToPath( folderName, jarPath, destinationPath );
+		}
+
+		final Key key = Key.of( jarPath );
+		final List<FileEntry> files = scan( key, onJarOpened ).filesInFolder( folderName );
+
+		if( files.isEmpty() ) {
+			return List.of();
+		}
+
+		final Map<String, byte[]> contents = folderContents( key, files, folderName, onJarOpened );
+
+		if( contents == null ) {
+			onJarOpened.run();
+			return Util.copyFolderFromJarToPath( folderName, jarPath, destinationPath );
+		}
+
+		final Path normalizedDestinationPath = destinationPath.toAbsolutePath().normalize();
+		final List<Path> writtenPaths = new ArrayList<>();
+
+		for( final Map.Entry<String, byte[]> entry : contents.entrySet() ) {
+			final Path targetPath = normalizedDestinationPath.resolve( entry.getKey() ).normalize();
+
+			if( !targetPath.startsWith( normalizedDestinationPath ) ) {
+				throw new IllegalArgumentException( "Jar entry '%s' in %s points outside of the extraction directory".formatted( entry.getKey(), jarPath ) );
+			}
+
+			Util.createParentDirectories( targetPath );
+
+			// Replaced rather than overwritten, since the existing file might be a link into the extraction store
+			try {
+				Files.deleteIfExists( targetPath );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+
+			Util.writeBytesToPath( entry.getValue(), targetPath );
+			writtenPaths.add( targetPath );
+		}
+
+		return writtenPaths;
+	}
+
+	private Scan scan( final Key key, final Runnable onJarOpened ) {
+		return get( new ScanKey( key ), () -> readScan( key.jarPath(), onJarOpened ), JarCache::scanWeight );
+	}
+
+	/**
+	 * @return The content of [files] (the files in the folder named [folderName]), or null if it's too large to be held
+	 */
+	private Map<String, byte[]> folderContents( final Key key, final List<FileEntry> files, final String folderName, final Runnable onJarOpened ) {
+		if( files.stream().mapToLong( JarCache::fileWeight ).sum() > _maximumBytes ) {
+			return null;
+		}
+
+		return get( new FolderKey( key, folderName ), () -> readFolderContents( key.jarPath(), files, onJarOpened ), JarCache::contentsWeight );
+	}
+
+	/**
+	 * @return The cached value for [key], reading it with [reader] if it's not cached (or being read by another thread)
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T get( final Object key, final Supplier<T> reader, final ToLongFunction<T> weigher ) {
+		final Cached cached;
+		final boolean read;
+
+		synchronized( this ) {
+			final Cached existing = _cached.get( key );
+
+			if( existing != null ) {
+				cached = existing;
+				read = false;
+				_hits.increment();
+			}
+			else {
+				cached = new Cached();
+				_cached.put( key, cached );
+				read = true;
+				_misses.increment();
+			}
+		}
+
+		if( !read ) {
+			try {
+				return (T)cached.future.join();
+			}
+			catch( final CompletionException e ) {
+				if( e.getCause() instanceof RuntimeException runtimeException ) {
+					throw runtimeException;
+				}
+
+				throw e;
+			}
+		}
+
+		final T value;
+
+		try {
+			value = reader.get();
+		}
+		catch( final RuntimeException e ) {
+			// Failures aren't cached, the next request tries again
+			synchronized( this ) {
+				_cached.remove( key, cached );
+			}
+
+			cached.future.completeExceptionally( e );
+			throw e;
+		}
+
+		synchronized( this ) {
+			cached.weight = weigher.applyAsLong( value );
+
+			// Only count it if it wasn't evicted while being read
+			if( _cached.get( key ) == cached ) {
+				_cachedBytes += cached.weight;
+				evict();
+			}
+		}
+
+		cached.future.complete( value );
+		return value;
+	}
+
+	/**
+	 * Removes the least recently used values until we're within our bounds. Values still being read are left alone.
+	 */
+	private void evict() {
+		final Iterator<Cached> iterator = _cached.values().iterator();
+
+		while( _cachedBytes > _maximumBytes && iterator.hasNext() ) {
+			final Cached cached = iterator.next();
+
+			if( cached.future.isDone() || cached.weight > 0 ) {
+				iterator.remove();
+				_cachedBytes -= cached.weight;
+				_evictions.increment();
+			}
+		}
+	}
+
+	private static Scan readScan( final Path jarPath, final Runnable onJarOpened ) {
+		final List<FileEntry> files = new ArrayList<>();
+
+		// We don't verify signatures of the jars we read, so we skip the overhead of that
+		try( final JarFile jarFile = new JarFile( jarPath.toFile(), false ) ) {
+			onJarOpened.run();
+
+			for( final JarEntry entry : Collections.list( jarFile.entries() ) ) {
+				if( !entry.isDirectory() ) {
+					files.add( new FileEntry( entry.getName(), entry.getSize(), entry.getCrc() ) );
+				}
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return new Scan( Collections.unmodifiableList( files ) );
+	}
+
+	private static Map<String, byte[]> readFolderContents( final Path jarPath, final List<FileEntry> files, final Runnable onJarOpened ) {
+		final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+		try( final JarFile jarFile = new JarFile( jarPath.toFile(), false ) ) {
+			onJarOpened.run();
+
+			for( final FileEntry file : files ) {
+				final JarEntry entry = jarFile.getJarEntry( file.name() );
+
+				try( final InputStream stream = jarFile.getInputStream( entry ) ) {
+					contents.put( file.name(), stream.readAllBytes() );
+				}
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return Collections.unmodifiableMap( contents );
+	}
+
+	private static long fileWeight( final FileEntry file ) {
+		return ENTRY_OVERHEAD + 2L * file.name().length() + Math.max( 0, file.size() );
+	}
+
+	private static long scanWeight( final Scan scan ) {
+		return scan.files().stream().mapToLong( file -> ENTRY_OVERHEAD + 2L * file.name().length() ).sum();
+	}
+
+	private static long contentsWeight( final Map<String, byte[]> contents ) {
+		return contents.entrySet().stream().mapToLong( entry -> ENTRY_OVERHEAD + 2L * entry.getKey().length() + entry.getValue().length ).sum();
+	}
+
+	/**
+	 * @return Number of requests answered from the cache (including those that waited for another thread to read the jar)
+	 */
+	public long hits() {
+		return _hits.sum();
+	}
+
+	/**
+	 * @return Number of requests that required reading a jar
+	 */
+	public long misses() {
+		return _misses.sum();
+	}
+
+	/**
+	 * @return Number of cached values evicted to stay within our bounds
+	 */
+	public long evictions() {
+		return _evictions.sum();
+	}
+
+	/**
+	 * @return Estimated bytes currently held
+	 */
+	public synchronized long cachedBytes() {
+		return _cachedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "%d hits, %d misses, %d evictions, %d KB held".formatted( hits(), misses(), evictions(), cachedBytes() / 1024 );
+	}
+}
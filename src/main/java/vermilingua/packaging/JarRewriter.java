@@ -0,0 +1,181 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Adds files to an existing jar in a single sequential pass.
+ *
+ * Entries already in the jar are copied over raw (without inflating and deflating them again), unless they're being replaced by an added file.
+ * The added files are then appended, and the new jar replaces the original.
+ */
+
+public class JarRewriter {
+
+	/**
+	 * The jar we're rewriting
+	 */
+	private final Path _jarPath;
+
+	/**
+	 * Content to add to the jar, keyed by entry name. Values are either a Path (to a file) or a byte[].
+	 * Sorted by name, so the jar's layout doesn't depend on the order source files were found in.
+	 */
+	private final Map<String, Object> _additions = new TreeMap<>();
+
+	/**
+	 * Modification time of added entries. null to use the current time
+	 */
+	private final Instant _timestamp;
+
+	public JarRewriter( final Path jarPath ) {
+		this( jarPath, null );
+	}
+
+	/**
+	 * @param timestamp Modification time of the entries added to the jar (e.g. a reproducible build's project.build.outputTimestamp). null to use the current time.
+	 */
+	public JarRewriter( final Path jarPath, final Instant timestamp ) {
+		Objects.requireNonNull( jarPath );
+		_jarPath = jarPath;
+		_timestamp = timestamp;
+	}
+
+	/**
+	 * Adds the file at [sourcePath] to the jar as [entryName], replacing any previously added or existing entry with that name
+	 */
+	public void addFile( final String entryName, final Path sourcePath ) {
+		Objects.requireNonNull( entryName );
+		Objects.requireNonNull( sourcePath );
+		_additions.put( entryName, sourcePath );
+	}
+
+	/**
+	 * Adds [string] to the jar as [entryName], replacing any previously added or existing entry with that name
+	 */
+	public void addString( final String entryName, final String string ) {
+		Objects.requireNonNull( entryName );
+		Objects.requireNonNull( string );
+		_additions.put( entryName, string.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Adds every file in [sourceDirectory] to the jar, under a folder named [folderName] in the jar root.
+	 * Does nothing if [sourceDirectory] does not exist.
+	 */
+	public void addContentsOfDirectory( final Path sourceDirectory, final String folderName ) {
+		Objects.requireNonNull( sourceDirectory );
+		Objects.requireNonNull( folderName );
+
+		if( !Files.exists( sourceDirectory ) ) {
+			return;
+		}
+
+		try( Stream<Path> paths = Files.walk( sourceDirectory ) ) {
+			paths
+					.filter( path -> !Files.isDirectory( path ) )
+					.forEach( path -> addFile( entryName( folderName, sourceDirectory.relativize( path ) ), path ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return The jar entry name for the file at [relativePath] in the jar folder [folderName]
+	 */
+	public static String entryName( final String folderName, final Path relativePath ) {
+		return folderName + "/" + relativePath.toString().replace( '\\', '/' );
+	}
+
+	/**
+	 * Writes the new jar and replaces the original with it
+	 */
+	public void write() {
+		final Path temporaryJarPath = _jarPath.resolveSibling( _jarPath.getFileName() + ".vermilingua-tmp" );
+
+		try {
+			try( final ZipFile zipFile = ZipFile.builder().setPath( _jarPath ).get();
+					final OutputStream out = Files.newOutputStream( temporaryJarPath );
+					final ZipArchiveOutputStream zos = new ZipArchiveOutputStream( out ) ) {
+
+				// Names of every entry in the new jar, so we don't add duplicate directory entries
+				final Set<String> writtenNames = new HashSet<>();
+
+				// Copy over the existing entries, still compressed, except for those being replaced
+				for( final ZipArchiveEntry entry : Collections.list( zipFile.getEntriesInPhysicalOrder() ) ) {
+					if( !_additions.containsKey( entry.getName() ) && writtenNames.add( entry.getName() ) ) {
+						try( final InputStream rawStream = zipFile.getRawInputStream( entry ) ) {
+							zos.addRawArchiveEntry( entry, rawStream );
+						}
+					}
+				}
+
+				final long time = _timestamp != null ? ArchiveWriter.zipTime( _timestamp ) : System.currentTimeMillis();
+
+				// Append the added content, along with entries for any directories not already in the jar
+				for( final Map.Entry<String, Object> addition : _additions.entrySet() ) {
+					final String name = addition.getKey();
+
+					for( int i = name.indexOf( '/' ); i != -1; i = name.indexOf( '/', i + 1 ) ) {
+						final String directoryName = name.substring( 0, i + 1 );
+
+						if( writtenNames.add( directoryName ) ) {
+							final ZipArchiveEntry directoryEntry = new ZipArchiveEntry( directoryName );
+							directoryEntry.setTime( time );
+							zos.putArchiveEntry( directoryEntry );
+							zos.closeArchiveEntry();
+						}
+					}
+
+					final ZipArchiveEntry entry = new ZipArchiveEntry( name );
+					entry.setMethod( ZipEntry.DEFLATED );
+					entry.setTime( time );
+					zos.putArchiveEntry( entry );
+
+					if( addition.getValue() instanceof Path path ) {
+						Files.copy( path, zos );
+					}
+					else {
+						zos.write( (byte[])addition.getValue() );
+					}
+
+					zos.closeArchiveEntry();
+					writtenNames.add( name );
+				}
+			}
+
+			Files.move( temporaryJarPath, _jarPath, StandardCopyOption.REPLACE_EXISTING );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		finally {
+			try {
+				Files.deleteIfExists( temporaryJarPath );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package vermilingua.packaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates a "launcher" jar, containing nothing but a manifest whose Class-Path attribute references the application's jars.
+ * Placing that single jar on the classpath is equivalent to placing every jar it references there, keeping the JVM's command line short.
+ */
+
+public class LauncherJar {
+
+	/**
+	 * Filename of the launcher jar, placed in Contents/Resources/Java
+	 */
+	public static final String FILENAME = "launcher.jar";
+
+	/**
+	 * Modification time of the jar's entries. Fixed, so the jar's content only changes when the classpath does.
+	 */
+	private static final LocalDateTime ENTRY_TIME = LocalDateTime.of( 1980, 1, 1, 0, 0 ); // The earliest time representable in a zip file
+
+	/**
+	 * @param classpath Classpath entries, relative to the directory containing the launcher jar. Directories must end with a slash.
+	 *
+	 * @return The content of a launcher jar referencing [classpath]
+	 */
+	public static byte[] make( final List<String> classpath ) {
+		Objects.requireNonNull( classpath );
+
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+		manifest.getMainAttributes().put( Attributes.Name.CLASS_PATH, String.join( " ", classpath.stream().map( LauncherJar::encode ).toList() ) );
+		manifest.getMainAttributes().put( new Attributes.Name( "Created-By" ), "vermilingua" );
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try( final JarOutputStream jos = new JarOutputStream( out ) ) {
+			final JarEntry entry = new JarEntry( JarFile.MANIFEST_NAME );
+			entry.setTimeLocal( ENTRY_TIME );
+			jos.putNextEntry( entry );
+			manifest.write( jos );
+			jos.closeEntry();
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return [path] as a relative URL, as required by the Class-Path attribute (which uses spaces as a separator, so they must be escaped)
+	 */
+	private static String encode( final String path ) {
+		try {
+			return new URI( null, null, path, null ).getRawPath();
+		}
+		catch( final URISyntaxException e ) {
+			throw new IllegalArgumentException( e );
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines how dependency jars get from the local maven repository into the WOA.
+ *
+ * Linking makes sense because we never modify the jars once they're in the WOA, so there's no need to pay for a full copy of each of them on every build.
+ */
+
+public enum LinkStrategy {
+
+	/**
+	 * Plain byte copy. Always works.
+	 */
+	Copy,
+
+	/**
+	 * Hard link to the file in the maven repository. Requires source and destination to reside on the same filesystem.
+	 */
+	Hardlink,
+
+	/**
+	 * Copy-on-write clone of the file. Requires a filesystem that supports it (btrfs, XFS, APFS etc.)
+	 */
+	Reflink,
+
+	/**
+	 * Hard link if possible. If not, a copy-on-write clone if the source is on the same filesystem (where hard links might still be disallowed), and otherwise a copy
+	 * (for example if the maven repository is on a different filesystem than the build directory)
+	 */
+	Auto;
+
+	private static final Logger logger = LoggerFactory.getLogger( LinkStrategy.class );
+
+	/**
+	 * @return The strategy with the given name (case insensitive)
+	 */
+	public static LinkStrategy of( final String name ) {
+		Objects.requireNonNull( name );
+
+		for( final LinkStrategy strategy : values() ) {
+			if( strategy.name().equalsIgnoreCase( name ) ) {
+				return strategy;
+			}
+		}
+
+		throw new IllegalArgumentException( "Unknown link strategy '%s'. I only know 'copy', 'hardlink', 'reflink' and 'auto'".formatted( name ) );
+	}
+
+	/**
+	 * Places the file at [sourcePath] at [destinationPath] using this strategy, replacing any existing file at the destination
+	 *
+	 * @return true if the file's content was copied, false if it was linked or cloned
+	 */
+	public boolean apply( final Path sourcePath, final Path destinationPath ) {
+		Objects.requireNonNull( sourcePath );
+		Objects.requireNonNull( destinationPath );
+
+		return switch( this ) {
+			case Copy -> {
+				Util.copyFile( sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING );
+				yield true;
+			}
+			case Hardlink -> {
+				try {
+					hardlink( sourcePath, destinationPath );
+					yield false;
+				}
+				catch( final IOException e ) {
+					throw new UncheckedIOException( "Unable to hard link %s to %s. Are they on the same filesystem? Consider using the 'auto' link strategy".formatted( sourcePath, destinationPath ), e );
+				}
+			}
+			case Reflink -> {
+				try {
+					reflink( sourcePath, destinationPath );
+					yield false;
+				}
+				catch( final IOException e ) {
+					throw new UncheckedIOException( "Unable to clone %s to %s. Does the filesystem support copy-on-write clones? Consider using the 'auto' link strategy".formatted( sourcePath, destinationPath ), e );
+				}
+			}
+			case Auto -> {
+				try {
+					hardlink( sourcePath, destinationPath );
+					yield false;
+				}
+				catch( final IOException | UnsupportedOperationException e ) {
+					logger.debug( "Unable to hard link {}: {}", sourcePath, e.getMessage() );
+				}
+
+				// Clones can't cross filesystems any more than hard links can, so we don't start a cp just to have it fail
+				if( isSameFileStore( sourcePath, destinationPath.getParent() ) ) {
+					try {
+						reflink( sourcePath, destinationPath );
+						yield false;
+					}
+					catch( final IOException e ) {
+						logger.debug( "Unable to clone {}: {}", sourcePath, e.getMessage() );
+					}
+				}
+
+				logger.debug( "Copying {} instead", sourcePath );
+				Util.copyFile( sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING );
+				yield true;
+			}
+		};
+	}
+
+	private static void hardlink( final Path sourcePath, final Path destinationPath ) throws IOException {
+		Files.deleteIfExists( destinationPath );
+		Files.createLink( destinationPath, sourcePath );
+	}
+
+	/**
+	 * @return true if the files at [path] and [otherPath] are on the same filesystem. false if either doesn't exist.
+	 */
+	private static boolean isSameFileStore( final Path path, final Path otherPath ) {
+		try {
+			return otherPath != null && Files.getFileStore( path ).equals( Files.getFileStore( otherPath ) );
+		}
+		catch( final IOException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Java has no API for cloning files, so we let the system's cp do it. GNU cp on Linux, BSD cp on macOS.
+	 */
+	private static void reflink( final Path sourcePath, final Path destinationPath ) throws IOException {
+		final boolean isMac = System.getProperty( "os.name" ).toLowerCase( Locale.ROOT ).contains( "mac" );
+		final String cloneFlag = isMac ? "-c" : "--reflink=always";
+
+		Files.deleteIfExists( destinationPath );
+
+		final Process process = new ProcessBuilder( List.of( "cp", cloneFlag, sourcePath.toString(), destinationPath.toString() ) )
+				.redirectErrorStream( true )
+				.start();
+
+		try {
+			final String output = new String( process.getInputStream().readAllBytes() ).trim();
+
+			if( process.waitFor() != 0 ) {
+				throw new IOException( output );
+			}
+		}
+		catch( final InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+	}
+}
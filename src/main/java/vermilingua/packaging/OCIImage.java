@@ -0,0 +1,323 @@
+package vermilingua.packaging;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import vermilingua.packaging.PackageWOApplication.WOA;
+
+/**
+ * Writes a WOA as an OCI image layout (a directory structure of content-addressed blobs), packed into a single tar file.
+ *
+ * The WOA's files are divided into layers, ordered from the most to the least stable. A new release of an application usually only changes the last couple of layers,
+ * so a container runtime that already has the others doesn't have to pull them again. For a layer's digest to stay the same when it's content does,
+ * layers are written reproducibly (sorted, with a fixed modification time and no ownership).
+ *
+ * The image has no base layers, so it contains no Java runtime or shell. It's meant to be put on top of a base image that provides those.
+ */
+
+public class OCIImage {
+
+	private static final Logger logger = LoggerFactory.getLogger( OCIImage.class );
+
+	/**
+	 * The image's layers, in order
+	 */
+	public enum Layer {
+		Dependencies( "third-party dependency jars" ),
+		FrameworkWebServerResources( "framework webserver resources" ),
+		Frameworks( "in-house framework jars" ),
+		Application( "application jar and resources" ),
+		Configuration( "generated configuration and launch scripts" );
+
+		private final String _description;
+
+		private Layer( final String description ) {
+			_description = description;
+		}
+
+		public String description() {
+			return _description;
+		}
+	}
+
+	/**
+	 * How the image is written
+	 *
+	 * @param architecture The CPU architecture the image is declared for (amd64, arm64 etc.). The WOA itself is architecture independent (apart from a CDS archive), but the image must declare one.
+	 * @param inHouse Identifies dependencies that go in the Frameworks layer, rather than the (more stable) Dependencies layer
+	 * @param timestamp Modification time of every file in the image. Fixed, so a layer only changes when it's content does.
+	 */
+	public record Settings( String architecture, Predicate<Dependency> inHouse, Instant timestamp ) {
+
+		public Settings {
+			Objects.requireNonNull( architecture );
+			Objects.requireNonNull( inHouse );
+			Objects.requireNonNull( timestamp );
+		}
+	}
+
+	/**
+	 * Modification time of files in the image when the build doesn't specify a timestamp. One second after the epoch, since some tools treat zero as a missing value
+	 */
+	public static final Instant DEFAULT_TIMESTAMP = Instant.ofEpochSecond( 1 );
+
+	/**
+	 * Directory in the image's filesystem containing the WOA
+	 */
+	private static final String ROOT = "app";
+
+	private static final String INDEX_MEDIA_TYPE = "application/vnd.oci.image.index.v1+json";
+	private static final String MANIFEST_MEDIA_TYPE = "application/vnd.oci.image.manifest.v1+json";
+	private static final String CONFIG_MEDIA_TYPE = "application/vnd.oci.image.config.v1+json";
+	private static final String LAYER_MEDIA_TYPE = "application/vnd.oci.image.layer.v1.tar+gzip";
+
+	/**
+	 * A blob written to the image
+	 *
+	 * @param digest The blob's digest ("sha256:" followed by the hex encoded SHA-256 of it's content)
+	 * @param size The blob's size in bytes
+	 */
+	private record Blob( String digest, long size ) {}
+
+	/**
+	 * Writes an image of the (finished) [woa] built from [sourceProject] to [imagePath]
+	 */
+	public static void write( final WOA woa, final SourceProject sourceProject, final Settings settings, final Path imagePath ) {
+		Objects.requireNonNull( woa );
+		Objects.requireNonNull( sourceProject );
+		Objects.requireNonNull( settings );
+		Objects.requireNonNull( imagePath );
+
+		final Map<Layer, List<Path>> filesByLayer = filesByLayer( woa, sourceProject, settings.inHouse() );
+
+		// Blobs are written to a working directory before being packed into the image, since we need their digests before we can write the manifests referencing them
+		final Path workPath = imagePath.resolveSibling( imagePath.getFileName() + ".vermilingua-tmp" );
+		Util.deleteRecursively( workPath );
+		Util.folder( workPath );
+
+		try {
+			final Map<String, Path> blobPaths = new TreeMap<>();
+			final List<Layer> layers = new ArrayList<>();
+			final List<Blob> layerBlobs = new ArrayList<>();
+			final List<String> diffIDs = new ArrayList<>();
+
+			for( final Map.Entry<Layer, List<Path>> entry : filesByLayer.entrySet() ) {
+				final Path tarPath = workPath.resolve( entry.getKey().name() + ".tar" );
+				writeLayerTar( woa, entry.getValue(), tarPath, settings.timestamp() );
+
+				// The image config identifies layers by the digest of their uncompressed content, the manifest by the digest of the compressed blob
+				diffIDs.add( "sha256:" + Util.sha256( tarPath ) );
+
+				final Path blobPath = gzip( tarPath );
+				final Blob blob = blob( blobPath );
+				blobPaths.put( blob.digest(), blobPath );
+				layers.add( entry.getKey() );
+				layerBlobs.add( blob );
+
+				logger.info( "Layer {} ({}): {} files, {} bytes", layers.size(), entry.getKey().description(), entry.getValue().size(), blob.size() );
+			}
+
+			final byte[] config = configJSON( woa, sourceProject, settings.architecture(), layers, diffIDs ).getBytes( StandardCharsets.UTF_8 );
+			final Blob configBlob = writeBlob( config, workPath, blobPaths );
+
+			final byte[] manifest = manifestJSON( configBlob, layerBlobs ).getBytes( StandardCharsets.UTF_8 );
+			final Blob manifestBlob = writeBlob( manifest, workPath, blobPaths );
+
+			final String index = indexJSON( manifestBlob, sourceProject.version() );
+
+			try( final ArchiveWriter writer = ArchiveWriter.open( imagePath, ArchiveFormat.Tar, new ArchiveWriter.Settings( 1, Deflater.DEFAULT_COMPRESSION, false, settings.timestamp() ) ) ) {
+				writer.putBytes( "oci-layout", "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes( StandardCharsets.UTF_8 ), false );
+				writer.putBytes( "index.json", index.getBytes( StandardCharsets.UTF_8 ), false );
+				writer.putDirectory( "blobs", null );
+				writer.putDirectory( "blobs/sha256", null );
+
+				for( final Map.Entry<String, Path> entry : blobPaths.entrySet() ) {
+					writer.putFile( "blobs/sha256/" + entry.getKey().substring( "sha256:".length() ), entry.getValue(), false );
+				}
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+		finally {
+			Util.deleteRecursively( workPath );
+		}
+	}
+
+	/**
+	 * @return The files in [woa], grouped by the layer they belong in. Layers without any files are left out.
+	 */
+	private static Map<Layer, List<Path>> filesByLayer( final WOA woa, final SourceProject sourceProject, final Predicate<Dependency> inHouse ) {
+		final Map<Path, Dependency> dependencies = new HashMap<>();
+
+		for( final Dependency dependency : sourceProject.dependencies() ) {
+			dependencies.put( woa.dependencyPath( dependency ), dependency );
+		}
+
+		final Path appJarPath = woa.javaPath().resolve( sourceProject.name().toLowerCase() + ".jar" );
+		final Map<Layer, List<Path>> filesByLayer = new EnumMap<>( Layer.class );
+
+		try( final Stream<Path> paths = Files.walk( woa.woaPath() ) ) {
+			for( final Path path : paths.filter( Files::isRegularFile ).sorted().toList() ) {
+				if( path.getFileName().toString().equals( WOAManifest.FILENAME ) ) {
+					continue;
+				}
+
+				final Layer layer;
+				final Dependency dependency = dependencies.get( path );
+
+				if( dependency != null ) {
+					layer = inHouse.test( dependency ) ? Layer.Frameworks : Layer.Dependencies;
+				}
+				else if( path.startsWith( woa.frameworksPath() ) ) {
+					layer = Layer.FrameworkWebServerResources;
+				}
+				else if( path.equals( appJarPath ) || path.startsWith( woa.webserverResourcesPath() ) || (path.startsWith( woa.woresourcesPath() ) && !path.startsWith( woa.javaPath() )) ) {
+					layer = Layer.Application;
+				}
+				else {
+					// Everything else is generated by us (launch scripts, config.txt, Info.plist, a launcher jar, a CDS archive etc.)
+					layer = Layer.Configuration;
+				}
+
+				filesByLayer.computeIfAbsent( layer, __ -> new ArrayList<>() ).add( path );
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return filesByLayer;
+	}
+
+	/**
+	 * Writes an uncompressed tar of [files] (along with entries for their parent directories) to [tarPath], placing the WOA in the image's ROOT directory
+	 */
+	private static void writeLayerTar( final WOA woa, final List<Path> files, final Path tarPath, final Instant timestamp ) {
+		final String woaName = ROOT + "/" + woa.woaPath().getFileName();
+		final Set<String> directoryNames = new HashSet<>();
+
+		try( final ArchiveWriter writer = ArchiveWriter.open( tarPath, ArchiveFormat.Tar, new ArchiveWriter.Settings( 1, Deflater.DEFAULT_COMPRESSION, false, timestamp ) ) ) {
+			for( final Path file : files ) {
+				final String name = woaName + "/" + woa.woaPath().relativize( file ).toString().replace( '\\', '/' );
+
+				for( int i = name.indexOf( '/' ); i != -1; i = name.indexOf( '/', i + 1 ) ) {
+					final String directoryName = name.substring( 0, i );
+
+					if( directoryNames.add( directoryName ) ) {
+						writer.putDirectory( directoryName, null );
+					}
+				}
+
+				writer.putFile( name, file, Files.isExecutable( file ) );
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return Path to a gzip compressed copy of the file at [path]
+	 */
+	private static Path gzip( final Path path ) {
+		final Path gzipPath = path.resolveSibling( path.getFileName() + ".gz" );
+
+		// The gzip header's modification time is left at zero, so the compressed blob is as reproducible as the tar
+		try( final OutputStream out = new GzipCompressorOutputStream( new BufferedOutputStream( Files.newOutputStream( gzipPath ) ) ) ) {
+			Files.copy( path, out );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return gzipPath;
+	}
+
+	private static Blob blob( final Path path ) {
+		try {
+			return new Blob( "sha256:" + Util.sha256( path ), Files.size( path ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Writes [bytes] to a file in [workPath], registering it in [blobPaths]
+	 */
+	private static Blob writeBlob( final byte[] bytes, final Path workPath, final Map<String, Path> blobPaths ) {
+		final Path path = workPath.resolve( "blob-" + blobPaths.size() );
+		Util.writeBytesToPath( bytes, path );
+
+		final Blob blob = blob( path );
+		blobPaths.put( blob.digest(), path );
+		return blob;
+	}
+
+	private static String configJSON( final WOA woa, final SourceProject sourceProject, final String architecture, final List<Layer> layers, final List<String> diffIDs ) {
+		final String woaPath = "/" + ROOT + "/" + woa.woaPath().getFileName();
+		final String launchScriptPath = woaPath + "/" + sourceProject.name();
+
+		final StringBuilder b = new StringBuilder();
+		b.append( "{\"architecture\":" ).append( Util.jsonString( architecture ) );
+		b.append( ",\"os\":\"linux\"" );
+		b.append( ",\"config\":{\"Entrypoint\":[" ).append( Util.jsonString( launchScriptPath ) ).append( "],\"WorkingDir\":" ).append( Util.jsonString( woaPath ) ).append( "}" );
+		b.append( ",\"rootfs\":{\"type\":\"layers\",\"diff_ids\":[" ).append( String.join( ",", diffIDs.stream().map( Util::jsonString ).toList() ) ).append( "]}" );
+		b.append( ",\"history\":[" ).append( String.join( ",", layers.stream().map( layer -> "{\"created_by\":" + Util.jsonString( "vermilingua: " + layer.description() ) + "}" ).toList() ) ).append( "]" );
+		b.append( "}" );
+		return b.toString();
+	}
+
+	private static String manifestJSON( final Blob config, final List<Blob> layers ) {
+		final StringBuilder b = new StringBuilder();
+		b.append( "{\"schemaVersion\":2" );
+		b.append( ",\"mediaType\":" ).append( Util.jsonString( MANIFEST_MEDIA_TYPE ) );
+		b.append( ",\"config\":" ).append( descriptorJSON( CONFIG_MEDIA_TYPE, config, "" ) );
+		b.append( ",\"layers\":[" ).append( String.join( ",", layers.stream().map( layer -> descriptorJSON( LAYER_MEDIA_TYPE, layer, "" ) ).toList() ) ).append( "]" );
+		b.append( "}" );
+		return b.toString();
+	}
+
+	private static String indexJSON( final Blob manifest, final String version ) {
+		final String annotations = ",\"annotations\":{\"org.opencontainers.image.ref.name\":" + Util.jsonString( version ) + "}";
+
+		final StringBuilder b = new StringBuilder();
+		b.append( "{\"schemaVersion\":2" );
+		b.append( ",\"mediaType\":" ).append( Util.jsonString( INDEX_MEDIA_TYPE ) );
+		b.append( ",\"manifests\":[" ).append( descriptorJSON( MANIFEST_MEDIA_TYPE, manifest, annotations ) ).append( "]" );
+		b.append( "}" );
+		return b.toString();
+	}
+
+	/**
+	 * @param extra Additional JSON properties (starting with a comma), or an empty string
+	 *
+	 * @return A JSON descriptor referencing [blob]
+	 */
+	private static String descriptorJSON( final String mediaType, final Blob blob, final String extra ) {
+		return "{\"mediaType\":" + Util.jsonString( mediaType ) + ",\"digest\":" + Util.jsonString( blob.digest() ) + ",\"size\":" + blob.size() + extra + "}";
+	}
+}
@@ -1,19 +1,51 @@
 package vermilingua.packaging;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import vermilingua.packaging.PackagingPlan.CopyFile;
+import vermilingua.packaging.PackagingPlan.ExtractFolderFromJar;
+import vermilingua.packaging.PackagingPlan.Operation;
+import vermilingua.packaging.PackagingPlan.WriteBytes;
+import vermilingua.packaging.PackagingPlan.WriteString;
+import vermilingua.packaging.PackagingReport.Section;
+import vermilingua.packaging.PackagingReport.Stage;
+
 public class PackageWOApplication {
 
 	private static final Logger logger = LoggerFactory.getLogger( PackageWOApplication.class );
 
+	private final PackagingOptions _options;
+
+	public PackageWOApplication() {
+		this( PackagingOptions.defaults() );
+	}
+
+	public PackageWOApplication( final PackagingOptions options ) {
+		Objects.requireNonNull( options );
+		_options = options;
+	}
+
 	/**
 	 * Builds a WOA bundle
 	 *
@@ -31,40 +63,164 @@ public class PackageWOApplication {
 		// The WOA bundle, the destination for our build.
 		final WOA woa = WOA.create( targetPath, woaName );
 
+		// The CDS archive's name is part of config.txt. It's extension depends on the JVM, and is only decided by the training run.
+		final String cdsArchiveName = _options.cdsTraining() != null ? sourceProject.name() : "";
+
+		// First we plan the work, then we perform it
+		final PackagingPlan plan = plan( sourceProject, woa, cdsArchiveName );
+
+		// Directories are otherwise created as files get written to them, but we always want the bundle's standard structure in place
+		woa.createDirectories();
+
+		// When building incrementally, the manifest decides what actually needs copying. Otherwise we just copy everything.
+		final WOAManifest manifest;
+
+		if( _options.incremental() ) {
+			manifest = WOAManifest.load( woa.woaPath(), _options.incrementalChecksums() );
+		}
+		else {
+			WOAManifest.delete( woa.woaPath() );
+			manifest = null;
+		}
+
+		plan.execute( _options.packagingThreads(), new DirectoryWriter( manifest, _options.dependencyLinkStrategy(), _options.report(), _options.jarCache(), _options.extractionStore() ) );
+
+		// Fingerprinting needs the content of every webserver resource, including those extracted from frameworks, so it happens once everything is in place
+		if( _options.fingerprintWebServerResources() ) {
+			try( final Section section = _options.report().begin( Stage.Fingerprinting ) ) {
+				final int fingerprintCount = Fingerprinter.fingerprint( woa, manifest ).size();
+				section.files( fingerprintCount );
+				logger.info( "Fingerprinted {} webserver resources", fingerprintCount );
+			}
+		}
+
+		// Done after fingerprinting, so the fingerprinted copies get compressed variants as well
+		if( _options.precompressWebServerResources() ) {
+			try( final Section section = _options.report().begin( Stage.Precompression ) ) {
+				final int precompressedCount = Precompressor.precompress( woa, manifest, _options.precompressMinimumSize() );
+				section.files( precompressedCount );
+				logger.info( "Precompressed {} webserver resources", precompressedCount );
+			}
+		}
+
+		// Get rid of anything left over from previous builds that no longer has a source, and remember what we did for next time
+		if( manifest != null ) {
+			final int deletedCount = manifest.pruneStaleFiles();
+
+			if( deletedCount > 0 ) {
+				logger.info( "Deleted {} stale files from {}", deletedCount, woa.woaPath().getFileName() );
+
+				// Pruning deletes the directories it leaves empty, which might include those of the standard structure
+				woa.createDirectories();
+			}
+
+			manifest.write();
+		}
+
+		// The training run launches the finished WOA, so this must happen last. The archive isn't in the manifest, since it gets recreated on every build anyway.
+		if( _options.cdsTraining() != null ) {
+			try( final Section section = _options.report().begin( Stage.CDSTraining ) ) {
+				CDSTrainer.train( woa, sourceProject.name(), cdsArchiveName, jvm( sourceProject.buildProperties() ), _options.cdsTraining() );
+			}
+		}
+
+		return woa;
+	}
+
+	/**
+	 * Builds a WOA bundle directly into an archive, without ever writing the bundle itself to disk.
+	 * Since entries must be written to the archive in sequence, the work is always performed on a single thread, in order of destination.
+	 * The work of the individual stages is reported as usual, within the Archiving stage that covers all of it.
+	 *
+	 * @param sourceProject The project we're building from
+	 * @param woaName Name of the WOA (not including the .woa suffix)
+	 * @param archivePath The archive to create
+	 * @param splitArchivePath If not null, the WOA's webserver resources (as extracted by a split) are simultaneously written to an archive at this path
+	 * @param format Format of the archives
+	 * @param settings Compression settings for the archives
+	 */
+	public void executeToArchive( final SourceProject sourceProject, final String woaName, final Path archivePath, final Path splitArchivePath, final ArchiveFormat format, final ArchiveWriter.Settings settings ) {
+		Objects.requireNonNull( sourceProject );
+		Objects.requireNonNull( woaName );
+		Objects.requireNonNull( archivePath );
+		Objects.requireNonNull( format );
+		Objects.requireNonNull( settings );
+
+		// A WOA that only exists as a set of paths relative to the archive root
+		final WOA woa = WOA.create( Path.of( "" ), woaName );
+
+		final PackagingPlan plan = plan( sourceProject, woa, "" );
+
+		try( final Section section = _options.report().begin( Stage.Archiving ) ) {
+			try( final ArchiveWriter writer = ArchiveWriter.open( archivePath, format, settings );
+					final ArchiveWriter splitWriter = splitArchivePath != null ? ArchiveWriter.open( splitArchivePath, format, settings ) : null ) {
+				plan.executeInDestinationOrder( new ArchiveEntryWriter( woa, writer, splitWriter, _options.report(), _options.jarCache(), _options.extractionStore() ) );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+
+			section.files( 1 );
+			section.bytesWritten( Util.size( archivePath ) );
+
+			if( splitArchivePath != null ) {
+				section.files( 1 );
+				section.bytesWritten( Util.size( splitArchivePath ) );
+			}
+		}
+	}
+
+	/**
+	 * @return The plan for assembling [woa] from [sourceProject]. Performs no I/O on the WOA.
+	 *
+	 * @param cdsArchiveName Name (without extension) of the CDS archive in the WOA root the launch script should use (if present). Empty string for none.
+	 */
+	private PackagingPlan plan( final SourceProject sourceProject, final WOA woa, final String cdsArchiveName ) {
+		final PackagingPlan plan = new PackagingPlan();
+
+		// Regular files just get copied
+		final BiConsumer<Path, Path> copyFunction = ( source, destination ) -> plan.add( new CopyFile( source, destination, false ) );
+
 		// The eventual name of the app's JAR file
 		final String appJarFilename = sourceProject.name().toLowerCase() + ".jar";
 
 		// Copy the app jar to the woa
-		Util.copyFile( sourceProject.principalJarPath(), woa.javaPath().resolve( appJarFilename ), StandardCopyOption.REPLACE_EXISTING );
+		copyFunction.accept( sourceProject.principalJarPath(), woa.javaPath().resolve( appJarFilename ) );
 
 		// Start collection the list of jars for the classpath
 		final List<String> classpath = new ArrayList<>();
 
-		classpath.add( "APPROOT/Resources/Java/" ); // We include the Java folder on the classpath because WOLifecycle does. Allows the user to drop class files in there, but I don't think anyone ever does. Remove?
+		// We include the Java folder on the classpath because WOLifecycle does. Allows the user to drop class files in there, but I don't think anyone ever does. Remove?
+		// CDS refuses to archive classes from a classpath containing a non-empty directory, so we leave it out if we're creating a CDS archive
+		if( cdsArchiveName.isEmpty() ) {
+			classpath.add( "APPROOT/Resources/Java/" );
+		}
+
 		classpath.add( "APPROOT/Resources/Java/" + appJarFilename );
 
 		// Copy the app's resolved dependencies (direct and transient) to the WOA
 		for( final Dependency dependency : sourceProject.dependencies() ) {
 			final Path artifactPathInMavenRepository = dependency.file().toPath();
-			final Path artifactFolderPathInWOA = Util.folder( woa.javaPath().resolve( dependency.groupId().replace( ".", "/" ) + "/" + dependency.artifactId() + "/" + dependency.version() ) );
-			final Path artifactPathInWOA = artifactFolderPathInWOA.resolve( dependency.file().getName() );
-			Util.copyFile( artifactPathInMavenRepository, artifactPathInWOA, StandardCopyOption.REPLACE_EXISTING );
+			final Path artifactPathInWOA = woa.dependencyPath( dependency );
+			plan.add( new CopyFile( artifactPathInMavenRepository, artifactPathInWOA, true ) );
 
 			// Add the jar to the classpath
 			classpath.add( "APPROOT/" + woa.contentsPath().relativize( artifactPathInWOA ) );
 		}
 
-		// Copy WebServerResources from framework jars to the WOA
+		// Copy WebServerResources from framework jars to the WOA. Whether a jar actually contains any is determined when the plan is executed, since that requires reading the jar.
 		for( final Dependency dependency : sourceProject.dependencies() ) {
-			if( Util.jarContainsNonEmptyWebServerResourcesDirectoryInRoot( dependency.file() ) ) {
-				final Path destinationPath = woa.frameworksPath().resolve( dependency.artifactId() + ".framework" );
-				Util.copyFolderFromJarToPath( "WebServerResources", dependency.file().toPath(), destinationPath );
-			}
+			final Path destinationPath = woa.frameworksPath().resolve( dependency.artifactId() + ".framework" );
+			plan.add( new ExtractFolderFromJar( dependency.file().toPath(), "WebServerResources", destinationPath ) );
 		}
 
-		// Copy components
+		// Copy components. Flattening only plans the copies, the copying itself is part of the resource copy.
 		if( Files.exists( sourceProject.componentsPath() ) ) {
-			Util.copyContentsOfDirectoryToDirectoryFlatten( sourceProject.componentsPath(), woa.woresourcesPath(), List.of( "wo" ), List.of( "lproj" ) );
+			try( final Section section = _options.report().begin( Stage.ComponentFlattening ) ) {
+				final ComponentFlattener.Flattening flattening = ComponentFlattener.flatten( sourceProject.componentsPath(), woa.woresourcesPath(), List.of( "wo" ), List.of( "lproj" ) );
+				flattening.checkCollisions( _options.failOnComponentCollisions() ).forEach( copyFunction );
+				section.files( flattening.files().size() );
+			}
 		}
 		else {
 			logger.warn( String.format( "Not copying components. %s does not exist", sourceProject.componentsPath() ) );
@@ -72,7 +228,7 @@ public class PackageWOApplication {
 
 		// Copy woresources
 		if( Files.exists( sourceProject.woresourcesPath() ) ) {
-			Util.copyContentsOfDirectoryToDirectory( sourceProject.woresourcesPath(), woa.woresourcesPath() );
+			Util.copyContentsOfDirectoryToDirectory( sourceProject.woresourcesPath(), woa.woresourcesPath(), copyFunction );
 		}
 		else {
 			logger.warn( String.format( "Not copying woresources. %s does not exist", sourceProject.woresourcesPath() ) );
@@ -80,34 +236,511 @@ public class PackageWOApplication {
 
 		// Copy webserverresources
 		if( Files.exists( sourceProject.webserverResourcesPath() ) ) {
-			Util.copyContentsOfDirectoryToDirectory( sourceProject.webserverResourcesPath(), woa.webserverResourcesPath() );
+			Util.copyContentsOfDirectoryToDirectory( sourceProject.webserverResourcesPath(), woa.webserverResourcesPath(), copyFunction );
 		}
 		else {
 			logger.warn( String.format( "Not copying WebServerResources. %s does not exist", sourceProject.webserverResourcesPath() ) );
 		}
 
+		// Index the resources of the app and it's frameworks. The app's resources are those we're copying into the Resources folder (apart from jars)
+		if( _options.resourceIndex() ) {
+			final ResourceIndex resourceIndex = new ResourceIndex();
+
+			try( final Section section = _options.report().begin( Stage.JarScanning ) ) {
+				for( final Operation operation : plan.operations() ) {
+					if( operation instanceof CopyFile copy && copy.destination().startsWith( woa.woresourcesPath() ) && !copy.destination().startsWith( woa.javaPath() ) ) {
+						resourceIndex.addFile( "app", woa.woresourcesPath().relativize( copy.destination() ), copy.source() );
+						section.files( 1 );
+						section.bytesRead( Util.size( copy.source() ) );
+					}
+				}
+
+				for( final Dependency dependency : sourceProject.dependencies() ) {
+					resourceIndex.addJar( dependency.artifactId(), _options.jarCache().scan( dependency.file().toPath(), section::jarOpened ) );
+				}
+			}
+
+			resourceIndex.logDuplicates();
+			plan.add( new WriteString( resourceIndex.toTSV(), woa.woresourcesPath().resolve( ResourceIndex.FILENAME ), false ) );
+		}
+
 		// Write config.txt
 		String configString = Util.readTemplate( "config" );
 		configString = configString.replace( "${principalClass}", sourceProject.principalClassName() );
 		configString = configString.replace( "${jvm}", jvm( sourceProject.buildProperties() ) );
 		configString = configString.replace( "${jvmOptions}", jvmOptions( sourceProject.buildProperties() ) );
-		Util.writeStringToPath( configString, woa.woaPath().resolve( "config.txt" ) );
+
+		if( !cdsArchiveName.isEmpty() ) {
+			configString = configString + "cdsArchive=" + cdsArchiveName + "\n";
+		}
+
+		plan.add( new WriteString( configString, woa.woaPath().resolve( "config.txt" ), false ) );
+
+		// With a launcher jar, the classpath moves into the jar's manifest, leaving the launcher jar as the only classpath entry
+		if( _options.launcherJar() ) {
+			final String javaFolderPrefix = "APPROOT/" + woa.contentsPath().relativize( woa.javaPath() ) + "/";
+			final List<String> launcherClasspath = classpath
+					.stream()
+					.map( entry -> entry.equals( javaFolderPrefix ) ? "./" : entry.substring( javaFolderPrefix.length() ) )
+					.toList();
+
+			plan.add( new WriteBytes( LauncherJar.make( launcherClasspath ), woa.javaPath().resolve( LauncherJar.FILENAME ) ) );
+
+			classpath.clear();
+			classpath.add( javaFolderPrefix + LauncherJar.FILENAME );
+		}
 
 		// Write classpath.txt
 		final String classpathString = String.join( "\n", classpath ) + "\n";
-		Util.writeStringToPath( classpathString, woa.woaPath().resolve( "classpath.txt" ) );
+		plan.add( new WriteString( classpathString, woa.woaPath().resolve( "classpath.txt" ), false ) );
 
 		// Write Info.plist
 		final String infoPlistString = InfoPlist.make( sourceProject, appJarFilename );
-		Util.writeStringToPath( infoPlistString, woa.infoPlistPath() );
+		plan.add( new WriteString( infoPlistString, woa.infoPlistPath(), false ) );
 
 		// Write executable launch script
-		final String launchScriptString = Util.readTemplate( "launch-script" );
-		final Path launchScriptPath = woa.woaPath().resolve( sourceProject.name() );
-		Util.writeStringToPath( launchScriptString, launchScriptPath );
-		Util.makeUserExecutable( launchScriptPath );
+		final String launchScriptString;
 
-		return woa;
+		if( _options.argFileLaunch() ) {
+			// The JVM options and classpath get pre-resolved into argument files, with paths relative to the WOA root (where the launch script runs the JVM)
+			plan.add( new WriteString( jvmOptions( sourceProject.buildProperties() ).trim() + "\n", woa.woaPath().resolve( "jvm-options.args" ), false ) );
+
+			final List<String> relativeClasspath = classpath
+					.stream()
+					.map( entry -> woa.woaPath().relativize( woa.contentsPath() ) + entry.substring( "APPROOT".length() ) )
+					.toList();
+
+			plan.add( new WriteString( "-classpath " + argFileString( String.join( ":", relativeClasspath ) ) + "\n", woa.woaPath().resolve( "classpath.args" ), false ) );
+
+			String argFileLaunchScriptString = Util.readTemplate( "launch-script-argfile" );
+			argFileLaunchScriptString = argFileLaunchScriptString.replace( "${principalClass}", shellString( sourceProject.principalClassName() ) );
+			argFileLaunchScriptString = argFileLaunchScriptString.replace( "${jvm}", shellString( jvm( sourceProject.buildProperties() ) ) );
+			argFileLaunchScriptString = argFileLaunchScriptString.replace( "${cdsArchive}", shellString( cdsArchiveName ) );
+			argFileLaunchScriptString = argFileLaunchScriptString.replace( "${classpath}", shellString( String.join( ":", relativeClasspath ) ) );
+			launchScriptString = argFileLaunchScriptString;
+		}
+		else {
+			launchScriptString = Util.readTemplate( "launch-script" );
+		}
+
+		plan.add( new WriteString( launchScriptString, woa.woaPath().resolve( sourceProject.name() ), true ) );
+
+		return plan;
+	}
+
+	/**
+	 * Performs the operations of a packaging plan by writing to the filesystem.
+	 *
+	 * When given a manifest, work is only performed if the destination is out of date, and everything written is recorded in the manifest.
+	 */
+	private static class DirectoryWriter implements Consumer<Operation> {
+
+		/**
+		 * The manifest of an incremental build. null if we're performing a full build
+		 */
+		private final WOAManifest _manifest;
+
+		/**
+		 * How dependency jars get copied. They never get modified once in the WOA, so they can be linked rather than copied.
+		 */
+		private final LinkStrategy _linkStrategy;
+
+		private final PackagingReport _report;
+
+		private final JarCache _jarCache;
+
+		/**
+		 * Where extracted webserver resources are linked or copied from (using the link strategy). null if we extract them from the jars.
+		 */
+		private final ExtractionStore _extractionStore;
+
+		/**
+		 * Directories we've already created (or found to exist), so each one is only created once however many files go into it.
+		 * Operations may be performed on multiple threads, and computeIfAbsent() makes any other thread needing the same directory wait until it exists.
+		 */
+		private final Map<Path, Boolean> _createdDirectories = new ConcurrentHashMap<>();
+
+		public DirectoryWriter( final WOAManifest manifest, final LinkStrategy linkStrategy, final PackagingReport report, final JarCache jarCache, final ExtractionStore extractionStore ) {
+			Objects.requireNonNull( linkStrategy );
+			Objects.requireNonNull( report );
+			Objects.requireNonNull( jarCache );
+			_manifest = manifest;
+			_linkStrategy = linkStrategy;
+			_report = report;
+			_jarCache = jarCache;
+			_extractionStore = extractionStore;
+		}
+
+		@Override
+		public void accept( final Operation operation ) {
+			switch( operation ) {
+				case CopyFile copy -> copyFile( copy );
+				case ExtractFolderFromJar extract -> extractFolderFromJar( extract );
+				case WriteString write -> writeString( write );
+				case WriteBytes write -> writeBytes( write );
+			}
+		}
+
+		private void copyFile( final CopyFile copy ) {
+			createParentDirectories( copy.destination() );
+
+			try( final Section section = _report.begin( copy.dependency() ? Stage.DependencyCopy : Stage.ResourceCopy ) ) {
+				section.files( 1 );
+
+				// Only invoked if the file actually gets copied. Linked jars don't count as read or written.
+				final BiConsumer<Path, Path> copyFunction;
+
+				if( copy.dependency() ) {
+					copyFunction = ( source, destination ) -> {
+						if( _linkStrategy.apply( source, destination ) ) {
+							section.bytesCopied( Util.size( destination ) );
+						}
+					};
+				}
+				else {
+					copyFunction = ( source, destination ) -> {
+						Util.copyFile( source, destination, StandardCopyOption.REPLACE_EXISTING );
+						section.bytesCopied( Util.size( destination ) );
+					};
+				}
+
+				if( _manifest != null ) {
+					_manifest.copyFile( copy.source(), copy.destination(), copyFunction );
+				}
+				else {
+					copyFunction.accept( copy.source(), copy.destination() );
+				}
+			}
+		}
+
+		private void extractFolderFromJar( final ExtractFolderFromJar extract ) {
+			final Path jarPath = extract.jarPath();
+
+			try( final Section section = _report.begin( Stage.WebServerResourceExtraction ) ) {
+
+				// If the jar hasn't changed since the last incremental build, whatever we extracted from it then is still good
+				if( _manifest != null && _manifest.carryOverIfUpToDate( jarPath ) ) {
+					return;
+				}
+
+				// Writes nothing if the folder is missing or empty. Jars whose entries are cached and contain no such folder aren't opened at all.
+				final List<Path> extractedPaths;
+
+				if( _extractionStore != null ) {
+					if( _jarCache.scan( jarPath, section::jarOpened ).containsFilesInFolder( extract.folderName() ) ) {
+						// Like dependency jars, stored files never get modified once in the WOA, so they can be linked. Linked files don't count as read or written.
+						extractedPaths = _extractionStore.copyFolderFromJarToPath( extract.folderName(), jarPath, extract.destination(), ( source, destination ) -> {
+							if( _linkStrategy.apply( source, destination ) ) {
+								section.bytesCopied( Util.size( destination ) );
+							}
+						}, section::jarOpened );
+					}
+					else {
+						extractedPaths = List.of();
+					}
+				}
+				else {
+					extractedPaths = _jarCache.copyFolderFromJarToPath( extract.folderName(), jarPath, extract.destination(), section::jarOpened );
+
+					for( final Path extractedPath : extractedPaths ) {
+						section.bytesCopied( Util.size( extractedPath ) );
+					}
+				}
+
+				section.files( extractedPaths.size() );
+
+				if( _manifest != null ) {
+					_manifest.recordExtracted( jarPath, extractedPaths );
+				}
+			}
+		}
+
+		private void writeString( final WriteString write ) {
+			writeBytes( write.string().getBytes( StandardCharsets.UTF_8 ), write.destination() );
+
+			if( write.executable() ) {
+				Util.makeUserExecutable( write.destination() );
+			}
+		}
+
+		private void writeBytes( final WriteBytes write ) {
+			writeBytes( write.bytes(), write.destination() );
+		}
+
+		private void writeBytes( final byte[] bytes, final Path destination ) {
+			createParentDirectories( destination );
+
+			try( final Section section = _report.begin( Stage.GeneratedFiles ) ) {
+				section.files( 1 );
+
+				final boolean written;
+
+				if( _manifest != null ) {
+					written = _manifest.writeBytes( bytes, destination );
+				}
+				else {
+					Util.writeBytesToPath( bytes, destination );
+					written = true;
+				}
+
+				if( written ) {
+					section.bytesWritten( bytes.length );
+				}
+			}
+		}
+
+		/**
+		 * Creates the parent directories of [path], unless we've already done so for another file in the same directory
+		 */
+		private void createParentDirectories( final Path path ) {
+			_createdDirectories.computeIfAbsent( path.toAbsolutePath().getParent(), directory -> {
+				Util.createParentDirectories( path );
+				return Boolean.TRUE;
+			} );
+		}
+	}
+
+	/**
+	 * Performs the operations of a packaging plan by writing entries to an archive.
+	 *
+	 * Entries that belong in a split (the WOA's WebServerResources and Frameworks) can additionally be written to a second archive, rooted at App.woa.webserverresources
+	 */
+	private static class ArchiveEntryWriter implements Consumer<Operation> {
+
+		/**
+		 * The (relative) WOA whose paths the plan's destinations are resolved against
+		 */
+		private final WOA _woa;
+
+		private final ArchiveOutput _archive;
+
+		/**
+		 * Destination for webserver resources. null if we're not splitting
+		 */
+		private final ArchiveOutput _splitArchive;
+
+		private final PackagingReport _report;
+
+		private final JarCache _jarCache;
+
+		/**
+		 * Where extracted webserver resources are read from. null if we read them from the jars.
+		 */
+		private final ExtractionStore _extractionStore;
+
+		public ArchiveEntryWriter( final WOA woa, final ArchiveWriter writer, final ArchiveWriter splitWriter, final PackagingReport report, final JarCache jarCache, final ExtractionStore extractionStore ) {
+			Objects.requireNonNull( woa );
+			Objects.requireNonNull( writer );
+			Objects.requireNonNull( report );
+			Objects.requireNonNull( jarCache );
+			_woa = woa;
+			_report = report;
+			_jarCache = jarCache;
+			_extractionStore = extractionStore;
+			_archive = new ArchiveOutput( writer, woa.woaPath().getFileName().toString() );
+			_splitArchive = splitWriter != null ? new ArchiveOutput( splitWriter, woa.woaPath().getFileName() + ".webserverresources" ) : null;
+
+			// Same standard structure as a WOA written to disk
+			for( final Path directory : List.of( woa.javaPath(), woa.webserverResourcesPath(), woa.frameworksPath() ) ) {
+				_archive.putDirectories( woa.woaPath().relativize( directory ) );
+			}
+
+			if( _splitArchive != null ) {
+				_splitArchive.putDirectories( woa.woaPath().relativize( woa.webserverResourcesPath() ) );
+				_splitArchive.putDirectories( woa.woaPath().relativize( woa.frameworksPath() ) );
+			}
+		}
+
+		@Override
+		public void accept( final Operation operation ) {
+			switch( operation ) {
+				case CopyFile copy -> copyFile( copy );
+				case ExtractFolderFromJar extract -> extractFolderFromJar( extract );
+				case WriteString write -> writeBytes( write.string().getBytes( StandardCharsets.UTF_8 ), write.destination(), write.executable() );
+				case WriteBytes write -> writeBytes( write.bytes(), write.destination(), false );
+			}
+		}
+
+		private void copyFile( final CopyFile copy ) {
+			try( final Section section = _report.begin( copy.dependency() ? Stage.DependencyCopy : Stage.ResourceCopy ) ) {
+				put( copy.destination(), ( writer, name ) -> writer.putFile( name, copy.source(), Files.isExecutable( copy.source() ) ) );
+				section.files( 1 );
+				section.bytesCopied( Util.size( copy.source() ) );
+			}
+		}
+
+		private void writeBytes( final byte[] bytes, final Path destination, final boolean executable ) {
+			try( final Section section = _report.begin( Stage.GeneratedFiles ) ) {
+				put( destination, ( writer, name ) -> writer.putBytes( name, bytes, executable ) );
+				section.files( 1 );
+				section.bytesWritten( bytes.length );
+			}
+		}
+
+		private void extractFolderFromJar( final ExtractFolderFromJar extract ) {
+			try( final Section section = _report.begin( Stage.WebServerResourceExtraction ) ) {
+				if( _extractionStore != null ) {
+					if( !_jarCache.scan( extract.jarPath(), section::jarOpened ).containsFilesInFolder( extract.folderName() ) ) {
+						return;
+					}
+
+					for( final Map.Entry<String, Path> entry : _extractionStore.storedFiles( extract.folderName(), extract.jarPath(), section::jarOpened ).entrySet() ) {
+						final Path storedPath = entry.getValue();
+						section.files( 1 );
+						section.bytesCopied( Util.size( storedPath ) );
+						put( extractedPath( extract, entry.getKey() ), ( writer, name ) -> writer.putFile( name, storedPath, false ) );
+					}
+
+					return;
+				}
+
+				// Without a cache to keep it, scanning the jar first would only mean opening it twice, so we go straight to streaming it
+				if( _jarCache.isEnabled() ) {
+					if( !_jarCache.scan( extract.jarPath(), section::jarOpened ).containsFilesInFolder( extract.folderName() ) ) {
+						return;
+					}
+
+					final Map<String, byte[]> contents = _jarCache.folderContents( extract.jarPath(), extract.folderName(), section::jarOpened );
+
+					if( contents != null ) {
+						for( final Map.Entry<String, byte[]> entry : contents.entrySet() ) {
+							final byte[] bytes = entry.getValue();
+							section.files( 1 );
+							section.bytesCopied( bytes.length );
+							put( extractedPath( extract, entry.getKey() ), ( writer, name ) -> writer.putBytes( name, bytes, false ) );
+						}
+
+						return;
+					}
+				}
+
+				// Streamed from the jar, walking it's entries once. We don't verify signatures of the jars we extract from, so we skip the overhead of that
+				final String prefix = extract.folderName() + "/";
+
+				try( final JarFile jarFile = new JarFile( extract.jarPath().toFile(), false ) ) {
+					section.jarOpened();
+
+					for( final JarEntry entry : Collections.list( jarFile.entries() ) ) {
+						if( entry.isDirectory() || !entry.getName().startsWith( prefix ) ) {
+							continue;
+						}
+
+						section.files( 1 );
+						section.bytesCopied( entry.getSize() );
+
+						put( extractedPath( extract, entry.getName() ), ( writer, name ) -> {
+							try( final InputStream inStream = jarFile.getInputStream( entry ) ) {
+								writer.putStream( name, inStream, entry.getSize(), false );
+							}
+							catch( final IOException e ) {
+								throw new UncheckedIOException( e );
+							}
+						} );
+					}
+				}
+				catch( final IOException e ) {
+					throw new UncheckedIOException( e );
+				}
+			}
+		}
+
+		/**
+		 * @return The destination of the jar entry named [entryName] extracted by [extract]
+		 */
+		private static Path extractedPath( final ExtractFolderFromJar extract, final String entryName ) {
+			final Path normalizedDestinationPath = extract.destination().normalize();
+			final Path destination = normalizedDestinationPath.resolve( entryName ).normalize();
+
+			if( !destination.startsWith( normalizedDestinationPath ) ) {
+				throw new IllegalArgumentException( "Jar entry '%s' in %s points outside of the extraction directory".formatted( entryName, extract.jarPath() ) );
+			}
+
+			return destination;
+		}
+
+		/**
+		 * Writes the content for [destination] to the archive (and the split archive, if it belongs there) using [writeFunction] (writer, entryName)
+		 */
+		private void put( final Path destination, final BiConsumer<ArchiveWriter, String> writeFunction ) {
+			// Like archives of a WOA directory, ours never contain an incremental build manifest (should a resource folder happen to contain one)
+			if( destination.getFileName().toString().equals( WOAManifest.FILENAME ) ) {
+				return;
+			}
+
+			final Path relativePath = _woa.woaPath().relativize( destination );
+
+			_archive.put( relativePath, writeFunction );
+
+			if( _splitArchive != null && (destination.startsWith( _woa.webserverResourcesPath() ) || destination.startsWith( _woa.frameworksPath() )) ) {
+				_splitArchive.put( relativePath, writeFunction );
+			}
+		}
+	}
+
+	/**
+	 * An archive being written, with all entries placed under a root folder named [rootName]. Keeps track of directory entries so each is only written once.
+	 */
+	private static class ArchiveOutput {
+
+		private final ArchiveWriter _writer;
+		private final String _rootName;
+		private final Set<String> _directoryNames = new HashSet<>();
+
+		public ArchiveOutput( final ArchiveWriter writer, final String rootName ) {
+			_writer = writer;
+			_rootName = rootName;
+			_directoryNames.add( rootName );
+			_writer.putDirectory( rootName, null );
+		}
+
+		/**
+		 * Writes the entry for [relativePath] using [writeFunction], preceded by entries for any of it's parent directories not yet in the archive
+		 */
+		public void put( final Path relativePath, final BiConsumer<ArchiveWriter, String> writeFunction ) {
+			final String name = entryName( relativePath );
+			putParentDirectories( name );
+			writeFunction.accept( _writer, name );
+		}
+
+		/**
+		 * Writes entries for the directory at [relativePath] and it's parents
+		 */
+		public void putDirectories( final Path relativePath ) {
+			final String name = entryName( relativePath );
+			putParentDirectories( name );
+
+			if( _directoryNames.add( name ) ) {
+				_writer.putDirectory( name, null );
+			}
+		}
+
+		private void putParentDirectories( final String name ) {
+			for( int i = name.indexOf( '/', _rootName.length() + 1 ); i != -1; i = name.indexOf( '/', i + 1 ) ) {
+				final String directoryName = name.substring( 0, i );
+
+				if( _directoryNames.add( directoryName ) ) {
+					_writer.putDirectory( directoryName, null );
+				}
+			}
+		}
+
+		private String entryName( final Path relativePath ) {
+			return _rootName + "/" + relativePath.toString().replace( '\\', '/' );
+		}
+	}
+
+	/**
+	 * @return [string] quoted for use in a JVM argument file
+	 */
+	private static String argFileString( final String string ) {
+		return "\"" + string.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ) + "\"";
+	}
+
+	/**
+	 * @return [string] escaped for use within a single quoted string in a shell script
+	 */
+	private static String shellString( final String string ) {
+		return string.replace( "'", "'\\''" );
 	}
 
 	/**
@@ -170,7 +803,16 @@ public class PackageWOApplication {
 
 		private WOA( final Path woaPath ) {
 			Objects.requireNonNull( woaPath );
-			_woaPath = Util.folder( woaPath );
+			_woaPath = woaPath;
+		}
+
+		/**
+		 * Creates the WOA's standard directory structure on disk. The path methods of this class don't touch the filesystem, so a WOA can be planned without being written.
+		 */
+		public void createDirectories() {
+			Util.folder( javaPath() );
+			Util.folder( webserverResourcesPath() );
+			Util.folder( frameworksPath() );
 		}
 
 		/**
@@ -184,35 +826,43 @@ public class PackageWOApplication {
 		 * @return Root destination path for the WOA's contents
 		 */
 		public Path contentsPath() {
-			return Util.folder( woaPath().resolve( "Contents" ) );
+			return woaPath().resolve( "Contents" );
 		}
 
 		/**
 		 * @return Destination path for frameworks to be embedded in the WOA bundle
 		 */
 		public Path frameworksPath() {
-			return Util.folder( contentsPath().resolve( "Frameworks" ) );
+			return contentsPath().resolve( "Frameworks" );
 		}
 
 		/**
 		 * @return Destination path for WO's woresources/bundle-resources/application-resources/whacchamacallit
 		 */
 		public Path woresourcesPath() {
-			return Util.folder( contentsPath().resolve( "Resources" ) );
+			return contentsPath().resolve( "Resources" );
 		}
 
 		/**
 		 * @return Destination path for WO's webserver resources
 		 */
 		public Path webserverResourcesPath() {
-			return Util.folder( contentsPath().resolve( "WebServerResources" ) );
+			return contentsPath().resolve( "WebServerResources" );
 		}
 
 		/**
 		 * @return Destination path for jar files
 		 */
 		public Path javaPath() {
-			return Util.folder( woresourcesPath().resolve( "Java" ) );
+			return woresourcesPath().resolve( "Java" );
+		}
+
+		/**
+		 * @return Destination path for [dependency]'s jar, in a folder structure like the one in the local Maven repository
+		 */
+		public Path dependencyPath( final Dependency dependency ) {
+			final Path artifactFolderPath = javaPath().resolve( dependency.groupId().replace( ".", "/" ) + "/" + dependency.artifactId() + "/" + dependency.version() );
+			return artifactFolderPath.resolve( dependency.file().getName() );
 		}
 
 		/**
@@ -222,4 +872,4 @@ public class PackageWOApplication {
 			return contentsPath().resolve( "Info.plist" );
 		}
 	}
-}
\ No newline at end of file
+}
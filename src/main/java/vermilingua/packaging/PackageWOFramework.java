@@ -1,45 +1,89 @@
 package vermilingua.packaging;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import vermilingua.packaging.PackagingReport.Section;
+import vermilingua.packaging.PackagingReport.Stage;
 
 public class PackageWOFramework {
 
+	private final PackagingOptions _options;
+
+	public PackageWOFramework() {
+		this( PackagingOptions.defaults() );
+	}
+
+	public PackageWOFramework( final PackagingOptions options ) {
+		Objects.requireNonNull( options );
+		_options = options;
+	}
+
 	public void execute( final SourceProject sourceProject ) {
 		Objects.requireNonNull( sourceProject );
 
-		final Path stagingDir;
-		try {
-			stagingDir = Files.createTempDirectory( "vermilingua-framework-" );
-		}
-		catch( final IOException e ) {
-			throw new UncheckedIOException( e );
+		final JarRewriter jarRewriter = new JarRewriter( sourceProject.principalJarPath(), _options.timestamp() );
+
+		// Resources already in the jar get indexed along with the ones we add (which replace existing ones with the same name)
+		final ResourceIndex resourceIndex = _options.resourceIndex() ? new ResourceIndex() : null;
+
+		if( resourceIndex != null ) {
+			try( final Section section = _options.report().begin( Stage.JarScanning ) ) {
+				resourceIndex.addJar( sourceProject.name(), sourceProject.principalJarPath() );
+				section.jarOpened();
+			}
 		}
 
-		try {
-			if( Files.exists( sourceProject.componentsPath() ) ) {
-				Util.copyContentsOfDirectoryToDirectoryFlatten( sourceProject.componentsPath(), stagingDir, List.of( "wo" ), List.of( "lproj" ) );
+		// Components and woresources are flattened/copied "into" a relative path representing the jar's Resources folder. Nothing gets written there,
+		// the copy function just adds each file to the jar under it's destination's name
+		final Path resourcesPath = Path.of( "Resources" );
+		final BiConsumer<Path, Path> addToResources = ( source, destination ) -> {
+			jarRewriter.addFile( JarRewriter.entryName( "Resources", resourcesPath.relativize( destination ) ), source );
+
+			if( resourceIndex != null ) {
+				resourceIndex.addFile( sourceProject.name(), resourcesPath.relativize( destination ), source );
+			}
+		};
+
+		if( Files.exists( sourceProject.componentsPath() ) ) {
+			try( final Section section = _options.report().begin( Stage.ComponentFlattening ) ) {
+				final ComponentFlattener.Flattening flattening = ComponentFlattener.flatten( sourceProject.componentsPath(), resourcesPath, List.of( "wo" ), List.of( "lproj" ) );
+				flattening.checkCollisions( _options.failOnComponentCollisions() ).forEach( addToResources );
+				section.files( flattening.files().size() );
 			}
+		}
 
-			if( Files.exists( sourceProject.woresourcesPath() ) ) {
-				Util.copyContentsOfDirectoryToDirectory( sourceProject.woresourcesPath(), stagingDir );
+		if( Files.exists( sourceProject.woresourcesPath() ) ) {
+			try( final Section section = _options.report().begin( Stage.ResourceCopy ) ) {
+				Util.copyContentsOfDirectoryToDirectory( sourceProject.woresourcesPath(), resourcesPath, ( source, destination ) -> {
+					addToResources.accept( source, destination );
+					section.files( 1 );
+				} );
 			}
+		}
 
-			Util.copyContentsOfFolderAtPathToFolderInJar( stagingDir, "Resources", sourceProject.principalJarPath() );
-			Util.copyContentsOfFolderAtPathToFolderInJar( sourceProject.webserverResourcesPath(), "WebServerResources", sourceProject.principalJarPath() );
+		jarRewriter.addContentsOfDirectory( sourceProject.webserverResourcesPath(), "WebServerResources" );
 
-			// FIXME: This is currently only here to make Info.plist generation happy. Will get removed once Info.plist gets The Treatment // Hugi 2026-04-21
-			final String appJarFilename = sourceProject.name().toLowerCase() + ".jar";
+		// FIXME: This is currently only here to make Info.plist generation happy. Will get removed once Info.plist gets The Treatment // Hugi 2026-04-21
+		final String appJarFilename = sourceProject.name().toLowerCase() + ".jar";
 
-			final String infoPlistString = InfoPlist.make( sourceProject, appJarFilename );
-			Util.writeStringToPathInJar( infoPlistString, "Resources/Info.plist", sourceProject.principalJarPath() );
+		final String infoPlistString = InfoPlist.make( sourceProject, appJarFilename );
+		jarRewriter.addString( "Resources/Info.plist", infoPlistString );
+
+		if( resourceIndex != null ) {
+			jarRewriter.addString( "Resources/" + ResourceIndex.FILENAME, resourceIndex.toTSV() );
 		}
-		finally {
-			Util.deleteRecursively( stagingDir );
+
+		// Everything gets written to the jar in a single pass
+		try( final Section section = _options.report().begin( Stage.FrameworkJarRewrite ) ) {
+			section.bytesRead( Util.size( sourceProject.principalJarPath() ) );
+			section.jarOpened();
+			jarRewriter.write();
+			section.files( 1 );
+			section.bytesWritten( Util.size( sourceProject.principalJarPath() ) );
 		}
 	}
 }
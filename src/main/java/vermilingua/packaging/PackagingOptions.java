@@ -0,0 +1,57 @@
+package vermilingua.packaging;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Options controlling how a WOA bundle or framework gets assembled, along with the objects packaging shares with the rest of the build
+ *
+ * @param incremental Only copy files whose source has changed since the last build, and delete files from the bundle that no longer have a source. State is kept in a manifest in the WOA root.
+ * @param incrementalChecksums When building incrementally, compare content hashes of sources whose modification time has changed (for example after a fresh checkout) before copying them again
+ * @param dependencyLinkStrategy How dependency jars are placed in the WOA (copied, hard linked or cloned)
+ * @param packagingThreads Number of threads used to perform the packaging work. 1 performs everything in sequence on the calling thread.
+ * @param fingerprintWebServerResources Create content-hashed copies of webserver resources, along with a manifest mapping the original names to the hashed ones
+ * @param precompressWebServerResources Write gzip compressed variants of compressible webserver resources
+ * @param precompressMinimumSize Size (in bytes) below which webserver resources don't get precompressed
+ * @param launcherJar Place the classpath in the manifest of a launcher jar, which then becomes the only entry in classpath.txt
+ * @param argFileLaunch Pre-resolve the JVM options and classpath into JVM argument files, used by a launch script that doesn't need to start any other processes
+ * @param resourceIndex Write an index of the resources of the application and it's frameworks to Contents/Resources, and warn about resources shadowing each other
+ * @param failOnComponentCollisions Fail rather than warn when multiple components (or other files in the components folder) flatten to the same destination
+ * @param cdsTraining If not null, a training run of the finished WOA is performed to create a class data sharing archive, using these settings
+ * @param timestamp Modification time of the entries added to a framework's jar, for reproducible builds. null to use the current time
+ * @param report Receives the timings and sizes of the work performed
+ * @param jarCache Entry lists and webserver resources of dependency jars, possibly shared with other modules being packaged in the same build
+ * @param extractionStore Store of webserver resources extracted by previous builds. null if we're not using one
+ */
+
+public record PackagingOptions(
+		boolean incremental,
+		boolean incrementalChecksums,
+		LinkStrategy dependencyLinkStrategy,
+		int packagingThreads,
+		boolean fingerprintWebServerResources,
+		boolean precompressWebServerResources,
+		long precompressMinimumSize,
+		boolean launcherJar,
+		boolean argFileLaunch,
+		boolean resourceIndex,
+		boolean failOnComponentCollisions,
+		CDSTrainer.Settings cdsTraining,
+		Instant timestamp,
+		PackagingReport report,
+		JarCache jarCache,
+		ExtractionStore extractionStore ) {
+
+	public PackagingOptions {
+		Objects.requireNonNull( dependencyLinkStrategy );
+		Objects.requireNonNull( report );
+		Objects.requireNonNull( jarCache );
+	}
+
+	/**
+	 * @return The default options, which give the same result as a plain full build
+	 */
+	public static PackagingOptions defaults() {
+		return new PackagingOptions( false, false, LinkStrategy.Copy, 1, false, false, 0, false, false, false, false, null, null, new PackagingReport(), new JarCache( 0 ), null );
+	}
+}
@@ -0,0 +1,182 @@
+package vermilingua.packaging;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The list of operations required to assemble a bundle, keyed by destination.
+ *
+ * Building the plan before performing any of the work lets us detect sources that would overwrite each other's output,
+ * and since operations targeting different destinations are independent of each other, they can be performed in parallel.
+ */
+
+public class PackagingPlan {
+
+	private static final Logger logger = LoggerFactory.getLogger( PackagingPlan.class );
+
+	/**
+	 * A single operation producing content at [destination]
+	 */
+	public sealed interface Operation permits CopyFile, ExtractFolderFromJar, WriteString, WriteBytes {
+
+		/**
+		 * @return The path the operation writes to. For extractions, this is the directory extracted into.
+		 */
+		Path destination();
+
+		/**
+		 * @return Human readable description of where the operation's content comes from
+		 */
+		String sourceDescription();
+	}
+
+	/**
+	 * Copy the file at [source] to [destination]
+	 *
+	 * @param dependency true if the file is a dependency jar (which might get linked rather than copied)
+	 */
+	public record CopyFile( Path source, Path destination, boolean dependency ) implements Operation {
+
+		@Override
+		public String sourceDescription() {
+			return source.toString();
+		}
+	}
+
+	/**
+	 * Extract the folder named [folderName] from [jarPath] into [destination] (if the jar contains such a folder)
+	 */
+	public record ExtractFolderFromJar( Path jarPath, String folderName, Path destination ) implements Operation {
+
+		@Override
+		public String sourceDescription() {
+			return jarPath + "!/" + folderName;
+		}
+	}
+
+	/**
+	 * Write [string] to [destination]
+	 *
+	 * @param executable true if the file should be made executable after writing
+	 */
+	public record WriteString( String string, Path destination, boolean executable ) implements Operation {
+
+		@Override
+		public String sourceDescription() {
+			return "(generated)";
+		}
+	}
+
+	/**
+	 * Write [bytes] to [destination]
+	 */
+	public record WriteBytes( byte[] bytes, Path destination ) implements Operation {
+
+		@Override
+		public String sourceDescription() {
+			return "(generated)";
+		}
+	}
+
+	/**
+	 * Operations keyed by their destination. Normally there's only one operation per destination, but if two sources target the same destination,
+	 * both are kept (in the order they were added) so the result is the same as if they'd been performed sequentially.
+	 */
+	private final Map<Path, List<Operation>> _operations = new LinkedHashMap<>();
+
+	/**
+	 * Adds [operation] to the plan, logging a warning if another source already targets the same destination
+	 */
+	public void add( final Operation operation ) {
+		Objects.requireNonNull( operation );
+
+		final Path destination = operation.destination().toAbsolutePath().normalize();
+		final List<Operation> existing = _operations.computeIfAbsent( destination, __ -> new ArrayList<>() );
+
+		for( final Operation existingOperation : existing ) {
+			if( !existingOperation.equals( operation ) ) {
+				logger.warn( "{} is written by both {} and {}. The latter wins", destination, existingOperation.sourceDescription(), operation.sourceDescription() );
+			}
+		}
+
+		if( !existing.contains( operation ) ) {
+			existing.add( operation );
+		}
+	}
+
+	/**
+	 * @return All operations in the plan, in the order they were added
+	 */
+	public List<Operation> operations() {
+		return _operations.values().stream().flatMap( Collection::stream ).toList();
+	}
+
+	/**
+	 * Performs every operation in the plan using [performer] on the calling thread, ordered by destination rather than in plan order.
+	 * The order then doesn't depend on the order source files were found in, which matters when the output is an archive.
+	 */
+	public void executeInDestinationOrder( final Consumer<Operation> performer ) {
+		Objects.requireNonNull( performer );
+
+		_operations.entrySet()
+				.stream()
+				.sorted( Map.Entry.comparingByKey( Comparator.comparing( Path::toString ) ) )
+				.forEach( entry -> entry.getValue().forEach( performer ) );
+	}
+
+	/**
+	 * Performs every operation in the plan using [performer], on up to [threads] threads.
+	 *
+	 * Operations targeting the same destination are always performed in sequence, in the order they were added. With a single thread, everything is performed in plan order on the calling thread.
+	 */
+	public void execute( final int threads, final Consumer<Operation> performer ) {
+		Objects.requireNonNull( performer );
+
+		if( threads <= 1 ) {
+			_operations.values().forEach( operations -> operations.forEach( performer ) );
+			return;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool( threads );
+
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+
+			for( final List<Operation> operations : _operations.values() ) {
+				futures.add( executor.submit( () -> operations.forEach( performer ) ) );
+			}
+
+			for( final Future<?> future : futures ) {
+				future.get();
+			}
+		}
+		catch( final ExecutionException e ) {
+			if( e.getCause() instanceof RuntimeException runtimeException ) {
+				throw runtimeException;
+			}
+
+			throw new IllegalStateException( e.getCause() );
+		}
+		catch( final InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( "Interrupted while packaging", e );
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package vermilingua.packaging;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records where packaging time goes. Work is measured in sections, each belonging to a stage of packaging, and every section is also emitted
+ * as a JFR event (vermilingua.PackagingStage) so packaging can be correlated with a recording of the whole build.
+ *
+ * Sections can be recorded from multiple threads. A stage's wall time is the time from the start of it's first section to the end of it's last one,
+ * while it's busy time is the sum of the durations of all it's sections (which exceeds the wall time when the work is performed in parallel).
+ */
+
+public class PackagingReport {
+
+	/**
+	 * Name of the report file, prefixed with the build's final name
+	 */
+	public static final String FILENAME_SUFFIX = "-packaging-report.json";
+
+	/**
+	 * The stages of packaging, in the order they're performed
+	 */
+	public enum Stage {
+
+		/**
+		 * Copying (or linking) dependency jars into the WOA
+		 */
+		DependencyCopy( "Dependency copy" ),
+
+		/**
+		 * Reading jars and resources to build the resource index
+		 */
+		JarScanning( "Jar scanning" ),
+
+		/**
+		 * Extracting webserver resources from framework jars
+		 */
+		WebServerResourceExtraction( "WSR extraction" ),
+
+		/**
+		 * Locating components and planning their flattened destinations
+		 */
+		ComponentFlattening( "Component flattening" ),
+
+		/**
+		 * Copying the principal jar, components, woresources and webserver resources
+		 */
+		ResourceCopy( "Resource copy" ),
+
+		/**
+		 * Writing generated files (Info.plist, launch scripts, classpath etc.)
+		 */
+		GeneratedFiles( "Generated files" ),
+		Fingerprinting( "Fingerprinting" ),
+		Precompression( "Precompression" ),
+		CDSTraining( "CDS training" ),
+
+		/**
+		 * Writing the new principal jar of a framework
+		 */
+		FrameworkJarRewrite( "Framework jar rewrite" ),
+		OCIImage( "OCI image" ),
+		Split( "Split" ),
+		Archiving( "Archiving" ),
+		DeltaArchive( "Delta archive" );
+
+		private final String _description;
+
+		Stage( final String description ) {
+			_description = description;
+		}
+
+		public String description() {
+			return _description;
+		}
+	}
+
+	/**
+	 * The work recorded for a single stage
+	 *
+	 * @param sections Number of sections recorded for the stage
+	 * @param wallNanos Time from the start of the stage's first section to the end of it's last one
+	 * @param busyNanos Sum of the durations of the stage's sections
+	 * @param files Number of files the stage processed
+	 * @param bytesRead Bytes of content read
+	 * @param bytesWritten Bytes of content written (to the WOA, a jar or an archive, before compression)
+	 * @param jarsOpened Number of jar files opened
+	 */
+	public record Totals( Stage stage, long sections, long wallNanos, long busyNanos, long files, long bytesRead, long bytesWritten, long jarsOpened ) {}
+
+	/**
+	 * Totals for each stage, populated up front so the map itself is never modified and can be shared between threads
+	 */
+	private final Map<Stage, Accumulator> _accumulators = new EnumMap<>( Stage.class );
+
+	public PackagingReport() {
+		for( final Stage stage : Stage.values() ) {
+			_accumulators.put( stage, new Accumulator() );
+		}
+	}
+
+	/**
+	 * @return A new section of [stage], measuring until it's closed
+	 */
+	public Section begin( final Stage stage ) {
+		Objects.requireNonNull( stage );
+		return new Section( stage );
+	}
+
+	/**
+	 * A single piece of work belonging to a stage. Each section is used by a single thread, and added to the report's totals when closed.
+	 */
+	public class Section implements AutoCloseable {
+
+		private final Stage _stage;
+		private final long _startNanos;
+		private final StageEvent _event;
+		private long _files;
+		private long _bytesRead;
+		private long _bytesWritten;
+		private long _jarsOpened;
+
+		private Section( final Stage stage ) {
+			_stage = stage;
+			_event = new StageEvent();
+			_event.begin();
+			_startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Records [count] files processed
+		 */
+		public void files( final long count ) {
+			_files += count;
+		}
+
+		/**
+		 * Records [count] bytes of content read
+		 */
+		public void bytesRead( final long count ) {
+			_bytesRead += count;
+		}
+
+		/**
+		 * Records [count] bytes of content written
+		 */
+		public void bytesWritten( final long count ) {
+			_bytesWritten += count;
+		}
+
+		/**
+		 * Records [count] bytes of content copied (read and written)
+		 */
+		public void bytesCopied( final long count ) {
+			_bytesRead += count;
+			_bytesWritten += count;
+		}
+
+		/**
+		 * Records the opening of a jar file
+		 */
+		public void jarOpened() {
+			_jarsOpened++;
+		}
+
+		@Override
+		public void close() {
+			final long endNanos = System.nanoTime();
+			_accumulators.get( _stage ).add( this, endNanos );
+
+			if( _event.shouldCommit() ) {
+				_event.stage = _stage.description();
+				_event.files = _files;
+				_event.bytesRead = _bytesRead;
+				_event.bytesWritten = _bytesWritten;
+				_event.jarsOpened = _jarsOpened;
+				_event.commit();
+			}
+		}
+	}
+
+	/**
+	 * @return The totals of every stage that had work recorded, in the order of stages
+	 */
+	public List<Totals> totals() {
+		final List<Totals> totals = new ArrayList<>();
+
+		_accumulators.forEach( ( stage, accumulator ) -> {
+			if( accumulator.sections.sum() > 0 ) {
+				totals.add( accumulator.totals( stage ) );
+			}
+		} );
+
+		return Collections.unmodifiableList( totals );
+	}
+
+	/**
+	 * @return Time from the start of the first section recorded to the end of the last one
+	 */
+	public long wallNanos() {
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+
+		for( final Accumulator accumulator : _accumulators.values() ) {
+			first = Math.min( first, accumulator.firstStartNanos.get() );
+			last = Math.max( last, accumulator.lastEndNanos.get() );
+		}
+
+		return last > first ? last - first : 0;
+	}
+
+	/**
+	 * @return The report as a JSON object
+	 */
+	public String toJSON() {
+		final StringBuilder b = new StringBuilder();
+		b.append( "{\n" );
+		b.append( "\t\"wallMillis\": " ).append( millis( wallNanos() ) ).append( ",\n" );
+		b.append( "\t\"stages\": [" );
+
+		final List<Totals> totals = totals();
+
+		for( int i = 0; i < totals.size(); i++ ) {
+			final Totals t = totals.get( i );
+			b.append( i == 0 ? "\n" : ",\n" );
+			b.append( "\t\t{" );
+			b.append( "\"stage\": " ).append( Util.jsonString( t.stage().name() ) );
+			b.append( ", \"description\": " ).append( Util.jsonString( t.stage().description() ) );
+			b.append( ", \"sections\": " ).append( t.sections() );
+			b.append( ", \"wallMillis\": " ).append( millis( t.wallNanos() ) );
+			b.append( ", \"busyMillis\": " ).append( millis( t.busyNanos() ) );
+			b.append( ", \"files\": " ).append( t.files() );
+			b.append( ", \"bytesRead\": " ).append( t.bytesRead() );
+			b.append( ", \"bytesWritten\": " ).append( t.bytesWritten() );
+			b.append( ", \"jarsOpened\": " ).append( t.jarsOpened() );
+			b.append( "}" );
+		}
+
+		b.append( totals.isEmpty() ? "]\n" : "\n\t]\n" );
+		b.append( "}\n" );
+		return b.toString();
+	}
+
+	/**
+	 * Writes the report as JSON to [path]
+	 */
+	public void write( final Path path ) {
+		Objects.requireNonNull( path );
+		Util.writeStringToPath( toJSON(), path );
+	}
+
+	/**
+	 * @return The report as a table for logging, one line per stage
+	 */
+	public List<String> toTable() {
+		final String format = "%-22s %10s %10s %8s %12s %12s %6s";
+		final List<String> lines = new ArrayList<>();
+		lines.add( format.formatted( "Stage", "Wall ms", "Busy ms", "Files", "Read", "Written", "Jars" ) );
+
+		for( final Totals t : totals() ) {
+			lines.add( format.formatted( t.stage().description(), millis( t.wallNanos() ), millis( t.busyNanos() ), t.files(), bytes( t.bytesRead() ), bytes( t.bytesWritten() ), t.jarsOpened() ) );
+		}
+
+		lines.add( format.formatted( "Total", millis( wallNanos() ), "", "", "", "", "" ).stripTrailing() );
+		return lines;
+	}
+
+	private static String millis( final long nanos ) {
+		return String.format( Locale.ROOT, "%.1f", nanos / 1_000_000.0 );
+	}
+
+	/**
+	 * @return [count] bytes in a human readable form
+	 */
+	private static String bytes( final long count ) {
+		if( count < 1024 ) {
+			return count + " B";
+		}
+
+		if( count < 1024 * 1024 ) {
+			return String.format( Locale.ROOT, "%.1f KB", count / 1024.0 );
+		}
+
+		return String.format( Locale.ROOT, "%.1f MB", count / (1024.0 * 1024.0) );
+	}
+
+	/**
+	 * Running totals of a stage, safe for concurrent updates
+	 */
+	private static class Accumulator {
+		final LongAdder sections = new LongAdder();
+		final LongAdder busyNanos = new LongAdder();
+		final LongAdder files = new LongAdder();
+		final LongAdder bytesRead = new LongAdder();
+		final LongAdder bytesWritten = new LongAdder();
+		final LongAdder jarsOpened = new LongAdder();
+		final AtomicLong firstStartNanos = new AtomicLong( Long.MAX_VALUE );
+		final AtomicLong lastEndNanos = new AtomicLong( Long.MIN_VALUE );
+
+		void add( final Section section, final long endNanos ) {
+			sections.increment();
+			busyNanos.add( endNanos - section._startNanos );
+			files.add( section._files );
+			bytesRead.add( section._bytesRead );
+			bytesWritten.add( section._bytesWritten );
+			jarsOpened.add( section._jarsOpened );
+			firstStartNanos.accumulateAndGet( section._startNanos, Math::min );
+			lastEndNanos.accumulateAndGet( endNanos, Math::max );
+		}
+
+		Totals totals( final Stage stage ) {
+			return new Totals( stage, sections.sum(), lastEndNanos.get() - firstStartNanos.get(), busyNanos.sum(), files.sum(), bytesRead.sum(), bytesWritten.sum(), jarsOpened.sum() );
+		}
+	}
+
+	/**
+	 * JFR event emitted for each section
+	 */
+	@Name("vermilingua.PackagingStage")
+	@Label("Packaging Stage")
+	@Category("Vermilingua")
+	@Description("A section of work performed while packaging a WebObjects application or framework")
+	@StackTrace(false)
+	static class StageEvent extends Event {
+
+		@Label("Stage")
+		String stage;
+
+		@Label("Files")
+		long files;
+
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+
+		@Label("Bytes Written")
+		@DataAmount
+		long bytesWritten;
+
+		@Label("Jars Opened")
+		long jarsOpened;
+	}
+}
@@ -0,0 +1,228 @@
+package vermilingua.packaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip OutputStream that compresses on multiple threads, in the same manner as pigz.
+ *
+ * Input is split into blocks that are deflated independently (each primed with the last 32K of the previous block as a dictionary, so compression barely suffers).
+ * Each block's deflate output ends on a byte boundary, so the compressed blocks are simply concatenated in order, giving a single standard gzip member.
+ */
+
+public class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * Size of each independently compressed block of input. Package visible for tests.
+	 */
+	static final int BLOCK_SIZE = 128 * 1024;
+
+	/**
+	 * The maximum dictionary size for deflate
+	 */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * gzip header. Magic number, deflate, no flags, no mtime, no extra flags, unknown OS
+	 */
+	private static final byte[] HEADER = { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)255 };
+
+	private final OutputStream _out;
+	private final int _level;
+	private final int _maxPendingBlocks;
+	private final ExecutorService _executor;
+
+	/**
+	 * Blocks being compressed, in order
+	 */
+	private final Queue<Future<byte[]>> _pendingBlocks = new ArrayDeque<>();
+
+	/**
+	 * CRC of the uncompressed data, for the gzip trailer
+	 */
+	private final CRC32 _crc = new CRC32();
+
+	/**
+	 * Total number of uncompressed bytes, for the gzip trailer
+	 */
+	private long _totalLength;
+
+	/**
+	 * The block currently being filled
+	 */
+	private byte[] _block = new byte[BLOCK_SIZE];
+	private int _blockLength;
+
+	/**
+	 * Last bytes of the previous block, used as the dictionary for compressing the next one
+	 */
+	private byte[] _dictionary;
+
+	private boolean _closed;
+
+	/**
+	 * @param out The stream to write the compressed data to
+	 * @param threads Number of threads to compress on
+	 * @param level Deflate compression level (0-9, or -1 for the default)
+	 */
+	public ParallelGzipOutputStream( final OutputStream out, final int threads, final int level ) throws IOException {
+		Objects.requireNonNull( out );
+
+		if( threads < 1 ) {
+			throw new IllegalArgumentException( "threads must be at least 1" );
+		}
+
+		_out = out;
+		_level = level;
+		_maxPendingBlocks = threads * 2;
+		_executor = Executors.newFixedThreadPool( threads );
+		_out.write( HEADER );
+	}
+
+	@Override
+	public void write( final int b ) throws IOException {
+		write( new byte[] { (byte)b }, 0, 1 );
+	}
+
+	@Override
+	public void write( final byte[] bytes, int offset, int length ) throws IOException {
+		Objects.checkFromIndexSize( offset, length, bytes.length );
+
+		while( length > 0 ) {
+			if( _blockLength == BLOCK_SIZE ) {
+				submitBlock( false );
+			}
+
+			final int count = Math.min( length, BLOCK_SIZE - _blockLength );
+			System.arraycopy( bytes, offset, _block, _blockLength, count );
+			_blockLength += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if( _closed ) {
+			return;
+		}
+
+		_closed = true;
+
+		try {
+			submitBlock( true );
+
+			while( !_pendingBlocks.isEmpty() ) {
+				writeNextBlock();
+			}
+
+			writeIntLE( (int)_crc.getValue() );
+			writeIntLE( (int)_totalLength );
+			_out.close();
+		}
+		finally {
+			_executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Hands the current block over for compression and starts a new one. Blocks until there's room in the queue of pending blocks.
+	 */
+	private void submitBlock( final boolean last ) throws IOException {
+		final byte[] block = _block;
+		final int blockLength = _blockLength;
+		final byte[] dictionary = _dictionary;
+
+		_crc.update( block, 0, blockLength );
+		_totalLength += blockLength;
+
+		if( blockLength > 0 ) {
+			final int dictionaryLength = Math.min( DICTIONARY_SIZE, blockLength );
+			_dictionary = Arrays.copyOfRange( block, blockLength - dictionaryLength, blockLength );
+		}
+
+		_pendingBlocks.add( _executor.submit( () -> deflate( block, blockLength, dictionary, _level, last ) ) );
+
+		_block = new byte[BLOCK_SIZE];
+		_blockLength = 0;
+
+		while( _pendingBlocks.size() >= _maxPendingBlocks ) {
+			writeNextBlock();
+		}
+	}
+
+	/**
+	 * Waits for the oldest pending block to finish compressing and writes it
+	 */
+	private void writeNextBlock() throws IOException {
+		try {
+			_out.write( _pendingBlocks.remove().get() );
+		}
+		catch( final InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch( final ExecutionException e ) {
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	/**
+	 * @return [block] compressed as raw deflate data. Non-last blocks end with a sync flush so the output ends on a byte boundary and can be concatenated with the next block.
+	 */
+	private static byte[] deflate( final byte[] block, final int length, final byte[] dictionary, final int level, final boolean last ) {
+		final Deflater deflater = new Deflater( level, true );
+
+		try {
+			if( dictionary != null ) {
+				deflater.setDictionary( dictionary );
+			}
+
+			deflater.setInput( block, 0, length );
+
+			final ByteArrayOutputStream out = new ByteArrayOutputStream( length / 2 + 64 );
+			final byte[] buffer = new byte[64 * 1024];
+
+			if( last ) {
+				deflater.finish();
+
+				while( !deflater.finished() ) {
+					out.write( buffer, 0, deflater.deflate( buffer ) );
+				}
+			}
+			else {
+				int count;
+
+				do {
+					count = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+					out.write( buffer, 0, count );
+				}
+				while( count == buffer.length );
+			}
+
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private void writeIntLE( final int value ) throws IOException {
+		_out.write( value & 0xff );
+		_out.write( (value >> 8) & 0xff );
+		_out.write( (value >> 16) & 0xff );
+		_out.write( (value >> 24) & 0xff );
+	}
+}
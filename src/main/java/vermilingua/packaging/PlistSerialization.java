@@ -1,96 +1,223 @@
 package vermilingua.packaging;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 
 /**
- * Generates the Info.plist file
+ * Serializes property lists (like Info.plist) in Apple's XML format, streaming the document to a Writer or OutputStream as it goes.
+ *
+ * Handles Maps (dict, with String keys), Lists (array), Strings, Booleans, integers (Integer, Long, Short, Byte and BigInteger), reals (Double, Float and BigDecimal),
+ * dates (Instant and Date, written in UTC with second precision) and byte arrays (data, base64 encoded). null values are omitted, along with their keys in dicts.
  */
 
 public class PlistSerialization {
 
-	private final StringBuilder b = new StringBuilder();
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!DOCTYPE plist PUBLIC \"-//Apple Computer//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n"
+			+ "<plist version=\"1.0\">\n";
+
+	private static final String FOOTER = "</plist>";
+
+	/**
+	 * Number of bytes base64 encoded at a time when writing data. A multiple of 3, so the encoded chunks can be concatenated.
+	 */
+	private static final int DATA_CHUNK_SIZE = 3 * 1024;
+
+	private final Object _plist;
 
 	public PlistSerialization( final Object plist ) {
 		Objects.requireNonNull( plist );
+		_plist = plist;
+	}
 
-		append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
-		append( "<!DOCTYPE plist PUBLIC \"-//Apple Computer//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n" );
-		append( "<plist version=\"1.0\">\n" );
+	/**
+	 * Writes the plist to [stream] as UTF-8. The stream is flushed, but not closed.
+	 */
+	public void writeTo( final OutputStream stream ) {
+		Objects.requireNonNull( stream );
 
-		appendEntry( 1, plist );
+		final Writer writer = new BufferedWriter( new OutputStreamWriter( stream, StandardCharsets.UTF_8 ) );
+		writeTo( writer );
 
-		append( "</plist>" );
+		try {
+			writer.flush();
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
 	}
 
-	private void append( final Object value ) {
-		b.append( value );
-	}
+	/**
+	 * Writes the plist to [writer]. The writer is neither flushed nor closed.
+	 */
+	public void writeTo( final Writer writer ) {
+		Objects.requireNonNull( writer );
 
-	private void append( final int indent, final Object value ) {
-		append( "\t".repeat( indent ) );
-		append( value );
+		try {
+			writer.write( HEADER );
+			writeValue( writer, 1, _plist );
+			writer.write( FOOTER );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
 	}
 
-	private void appendEntry( final int indent, final Object object ) {
-		if( object != null ) {
+	private static void writeValue( final Writer writer, final int indent, final Object object ) throws IOException {
+		switch( object ) {
+			case null -> {}
 
 			// Booleans are a bit.. special. The value is the element, so there's no container element
-			if( object instanceof Boolean ) {
-				if( (Boolean)object ) {
-					append( indent, "<true />\n" );
-				}
-				else {
-					append( indent, "<false />\n" );
+			case Boolean b -> {
+				writeIndent( writer, indent );
+				writer.write( b ? "<true />\n" : "<false />\n" );
+			}
+			case String string -> writeElement( writer, indent, "string", string );
+			case Integer i -> writeElement( writer, indent, "integer", i.toString() );
+			case Long l -> writeElement( writer, indent, "integer", l.toString() );
+			case Short s -> writeElement( writer, indent, "integer", s.toString() );
+			case Byte b -> writeElement( writer, indent, "integer", b.toString() );
+			case BigInteger i -> writeElement( writer, indent, "integer", i.toString() );
+			case Double d -> writeElement( writer, indent, "real", real( d ) );
+			case Float f -> writeElement( writer, indent, "real", real( f.doubleValue() ) );
+			case BigDecimal d -> writeElement( writer, indent, "real", d.toString() );
+			case Instant instant -> writeElement( writer, indent, "date", date( instant ) );
+			case Date date -> writeElement( writer, indent, "date", date( date.toInstant() ) );
+			case byte[] bytes -> writeData( writer, indent, bytes );
+			case Map<?, ?> map -> {
+				writeIndent( writer, indent );
+				writer.write( "<dict>\n" );
+
+				for( final Map.Entry<?, ?> entry : map.entrySet() ) {
+					if( !(entry.getKey() instanceof String key) ) {
+						throw new IllegalArgumentException( "Keys of plist dicts must be Strings, not " + entry.getKey() );
+					}
+
+					if( entry.getValue() != null ) {
+						writeElement( writer, indent + 1, "key", key );
+						writeValue( writer, indent + 1, entry.getValue() );
+					}
 				}
+
+				writeIndent( writer, indent );
+				writer.write( "</dict>\n" );
 			}
-			else {
-				final String elementName = switch( object ) {
-					case List<?> __ -> "array";
-					case Map<?, ?> __2 -> "dict";
-					case String __1 -> "string";
-					default -> throw new IllegalArgumentException( "I only handle Lists, Maps, Strings and Booleans. I don't know how to serialize " + object.getClass() );
-				};
-
-				append( indent, "<" + elementName + ">" );
-
-				if( object instanceof String ) {
-					append( object );
-					append( "</" + elementName + ">\n" );
+			case List<?> list -> {
+				writeIndent( writer, indent );
+				writer.write( "<array>\n" );
+
+				for( final Object o : list ) {
+					writeValue( writer, indent + 1, o );
 				}
 
-				if( object instanceof Map ) {
-					final Map<String, Object> map = (Map<String, Object>)object;
+				writeIndent( writer, indent );
+				writer.write( "</array>\n" );
+			}
+			default -> throw new IllegalArgumentException( "I only handle Maps, Lists, Strings, Booleans, numbers, dates and byte arrays. I don't know how to serialize " + object.getClass() );
+		}
+	}
 
-					append( "\n" );
+	/**
+	 * Writes an element named [elementName] with the (escaped) text content [value] on a single line
+	 */
+	private static void writeElement( final Writer writer, final int indent, final String elementName, final String value ) throws IOException {
+		writeIndent( writer, indent );
+		writer.write( '<' );
+		writer.write( elementName );
+		writer.write( '>' );
+		writeEscaped( writer, value );
+		writer.write( "</" );
+		writer.write( elementName );
+		writer.write( ">\n" );
+	}
 
-					for( final Entry<String, Object> entry : map.entrySet() ) {
-						append( indent + 1, "<key>" + entry.getKey() + "</key>\n" );
-						appendEntry( indent + 1, entry.getValue() );
-					}
+	private static void writeData( final Writer writer, final int indent, final byte[] bytes ) throws IOException {
+		final Base64.Encoder encoder = Base64.getEncoder();
 
-					append( indent, "</" + elementName + ">\n" );
-				}
+		writeIndent( writer, indent );
+		writer.write( "<data>" );
 
-				if( object instanceof List ) {
-					final List<?> list = (List<?>)object;
+		for( int i = 0; i < bytes.length; i += DATA_CHUNK_SIZE ) {
+			writer.write( encoder.encodeToString( Arrays.copyOfRange( bytes, i, Math.min( i + DATA_CHUNK_SIZE, bytes.length ) ) ) );
+		}
 
-					append( "\n" );
+		writer.write( "</data>\n" );
+	}
 
-					for( final Object o : list ) {
-						appendEntry( indent + 1, o );
-					}
+	private static void writeIndent( final Writer writer, final int indent ) throws IOException {
+		for( int i = 0; i < indent; i++ ) {
+			writer.write( '\t' );
+		}
+	}
 
-					append( indent, "</" + elementName + ">\n" );
-				}
+	/**
+	 * Writes [string] with the characters that have special meaning in XML escaped
+	 *
+	 * @throws IllegalArgumentException If [string] contains characters that can't be represented in XML 1.0 (control characters other than tab, newline and carriage return)
+	 */
+	private static void writeEscaped( final Writer writer, final String string ) throws IOException {
+		int start = 0;
+
+		for( int i = 0; i < string.length(); i++ ) {
+			final char c = string.charAt( i );
+
+			final String replacement = switch( c ) {
+				case '&' -> "&amp;";
+				case '<' -> "&lt;";
+				case '>' -> "&gt;";
+				default -> null;
+			};
+
+			if( replacement == null && ((c < 0x20 && c != '\t' && c != '\n' && c != '\r') || c == 0xFFFE || c == 0xFFFF) ) {
+				throw new IllegalArgumentException( "Character 0x%04x at index %d can't be represented in a plist: '%s'".formatted( (int)c, i, string ) );
+			}
+
+			if( replacement != null ) {
+				writer.write( string, start, i - start );
+				writer.write( replacement );
+				start = i + 1;
 			}
 		}
+
+		writer.write( string, start, string.length() - start );
+	}
+
+	private static String real( final double value ) {
+		if( !Double.isFinite( value ) ) {
+			throw new IllegalArgumentException( "Can't serialize %s as a plist real".formatted( value ) );
+		}
+
+		return Double.toString( value );
+	}
+
+	/**
+	 * @return [instant] in the format Apple's plist parsers expect (2026-04-21T13:37:00Z)
+	 */
+	private static String date( final Instant instant ) {
+		return DateTimeFormatter.ISO_INSTANT.format( instant.truncatedTo( ChronoUnit.SECONDS ) );
 	}
 
 	@Override
 	public String toString() {
-		return b.toString();
+		final StringWriter writer = new StringWriter();
+		writeTo( writer );
+		return writer.toString();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,148 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import vermilingua.packaging.PackageWOApplication.WOA;
+
+/**
+ * Writes gzip compressed variants of a WOA's webserver resources (app.css.gz next to app.css), allowing a web server (like nginx with gzip_static)
+ * to serve them compressed without compressing them on every request.
+ */
+
+public class Precompressor {
+
+	/**
+	 * Extension of the compressed variants
+	 */
+	private static final String EXTENSION = ".gz";
+
+	/**
+	 * Extensions of the text-based files worth precompressing. Anything else (images, fonts, archives and unknown binary formats) is left alone.
+	 */
+	private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of( "css", "js", "mjs", "html", "svg", "json", "xml", "txt", "map" );
+
+	/**
+	 * Precompresses the application's and the embedded frameworks' webserver resources in [woa].
+	 * Only text-based files (css, js, html, svg etc.) are compressed. Those smaller than [minimumSize] bytes are skipped, as are files that don't get any smaller by compressing them.
+	 *
+	 * @param manifest The manifest of an incremental build, used to record the compressed files. null if we're performing a full build
+	 *
+	 * @return The number of compressed variants in the WOA
+	 */
+	public static int precompress( final WOA woa, final WOAManifest manifest, final long minimumSize ) {
+		Objects.requireNonNull( woa );
+
+		int count = 0;
+
+		for( final Path directory : List.of( woa.webserverResourcesPath(), woa.frameworksPath() ) ) {
+			for( final Path path : files( directory ) ) {
+				if( !isCompressible( path.getFileName().toString() ) || Util.size( path ) < minimumSize ) {
+					continue;
+				}
+
+				final Path compressedPath = path.resolveSibling( path.getFileName() + EXTENSION );
+
+				if( isUpToDate( path, compressedPath ) || compress( path, compressedPath ) ) {
+					count++;
+
+					if( manifest != null ) {
+						manifest.recordExtracted( path, List.of( compressedPath ) );
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return true if the file named [name] is of a text-based type worth precompressing
+	 */
+	static boolean isCompressible( final String name ) {
+		final int periodIndex = name.lastIndexOf( '.' );
+		return periodIndex != -1 && COMPRESSIBLE_EXTENSIONS.contains( name.substring( periodIndex + 1 ).toLowerCase( Locale.ROOT ) );
+	}
+
+	/**
+	 * @return true if [path] is a compressed variant of another file in the same directory
+	 */
+	public static boolean isPrecompressedVariant( final Path path ) {
+		final String filename = path.getFileName().toString();
+		return filename.endsWith( EXTENSION ) && Files.exists( path.resolveSibling( filename.substring( 0, filename.length() - EXTENSION.length() ) ) );
+	}
+
+	/**
+	 * The compressed variant gets the original's modification time, so if they match, the variant was compressed from the current version of the file
+	 */
+	private static boolean isUpToDate( final Path path, final Path compressedPath ) {
+		try {
+			return Files.exists( compressedPath ) && Files.getLastModifiedTime( compressedPath ).equals( Files.getLastModifiedTime( path ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Writes [path] compressed to [compressedPath]
+	 *
+	 * @return true if the variant was kept, false if it was deleted again for not being any smaller than the original
+	 */
+	private static boolean compress( final Path path, final Path compressedPath ) {
+		final GzipParameters parameters = new GzipParameters();
+		parameters.setCompressionLevel( Deflater.BEST_COMPRESSION );
+
+		try {
+			// A stale variant is deleted rather than overwritten, since it might be linked from the extraction store (if the jar contained it)
+			Files.deleteIfExists( compressedPath );
+
+			try( final OutputStream out = new GzipCompressorOutputStream( Files.newOutputStream( compressedPath ), parameters ) ) {
+				Files.copy( path, out );
+			}
+
+			if( Files.size( compressedPath ) >= Files.size( path ) ) {
+				Files.delete( compressedPath );
+				return false;
+			}
+
+			final FileTime lastModifiedTime = Files.getLastModifiedTime( path );
+			Files.setLastModifiedTime( compressedPath, lastModifiedTime );
+			return true;
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return The regular files in [directory] (and it's subdirectories). Empty if the directory doesn't exist.
+	 */
+	private static List<Path> files( final Path directory ) {
+		if( !Files.exists( directory ) ) {
+			return List.of();
+		}
+
+		try( final Stream<Path> paths = Files.walk( directory ) ) {
+			return paths
+					.filter( Files::isRegularFile )
+					.toList();
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+}
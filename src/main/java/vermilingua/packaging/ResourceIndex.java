@@ -0,0 +1,219 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the resources in an application and the frameworks it embeds, allowing resources to be located without walking directories or enumerating jar entries.
+ *
+ * Written as a tab separated file, one line per resource: name, localization (empty if not localized), bundle, size and CRC-32 (in hex).
+ * Bundles are listed in the order they're searched when looking up resources (the application first, then frameworks in classpath order).
+ */
+
+public class ResourceIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger( ResourceIndex.class );
+
+	/**
+	 * Name of the index file, placed in the bundle's Resources folder
+	 */
+	public static final String FILENAME = "resource-index.tsv";
+
+	/**
+	 * Name of the folder containing resources in framework jars
+	 */
+	private static final String RESOURCES_FOLDER_NAME = "Resources";
+
+	/**
+	 * Suffix of localization folders
+	 */
+	private static final String LPROJ_SUFFIX = ".lproj";
+
+	/**
+	 * Resources that every bundle has it's own of, so having them in multiple bundles isn't a problem
+	 */
+	private static final Set<String> PER_BUNDLE_NAMES = Set.of( "Properties", "Info.plist" );
+
+	/**
+	 * A single resource
+	 *
+	 * @param name Path of the resource relative to the bundle's Resources folder (or it's localization folder, for localized resources)
+	 * @param localization Name of the localization folder the resource resides in, without the .lproj suffix. Empty string for non-localized resources.
+	 * @param bundle Name of the bundle the resource belongs to
+	 * @param size Size of the resource in bytes
+	 * @param crc CRC-32 of the resource's content
+	 */
+	public record Entry( String name, String localization, String bundle, long size, long crc ) {}
+
+	/**
+	 * Entries keyed by name and localization. Each list contains every bundle's entry for that resource, in lookup order
+	 */
+	private final Map<String, List<Entry>> _entries = new LinkedHashMap<>();
+
+	/**
+	 * Names of the bundles in the order they were first added, which is the order they're searched in
+	 */
+	private final Set<String> _bundles = new LinkedHashSet<>();
+
+	/**
+	 * Adds the file at [sourcePath] to the index as the resource at [relativePath] in [bundle]'s Resources folder
+	 */
+	public void addFile( final String bundle, final Path relativePath, final Path sourcePath ) {
+		Objects.requireNonNull( bundle );
+		Objects.requireNonNull( relativePath );
+		Objects.requireNonNull( sourcePath );
+
+		final CRC32 crc = new CRC32();
+
+		try( final InputStream stream = Files.newInputStream( sourcePath ) ) {
+			final byte[] buffer = new byte[65536];
+			int read;
+
+			while( (read = stream.read( buffer )) != -1 ) {
+				crc.update( buffer, 0, read );
+			}
+
+			add( bundle, relativePath.toString().replace( '\\', '/' ), Files.size( sourcePath ), crc.getValue() );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Adds the resources in the Resources folder of the jar at [jarPath] to the index, as belonging to [bundle].
+	 * Only reads the jar's central directory, which already contains each entry's size and CRC.
+	 */
+	public void addJar( final String bundle, final Path jarPath ) {
+		Objects.requireNonNull( bundle );
+		Objects.requireNonNull( jarPath );
+
+		final String prefix = RESOURCES_FOLDER_NAME + "/";
+
+		try( final JarFile jarFile = new JarFile( jarPath.toFile(), false ) ) {
+			for( final JarEntry entry : Collections.list( jarFile.entries() ) ) {
+				if( !entry.isDirectory() && entry.getName().startsWith( prefix ) && !entry.getName().equals( prefix + FILENAME ) ) {
+					add( bundle, entry.getName().substring( prefix.length() ), entry.getSize(), entry.getCrc() );
+				}
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Same as addJar( bundle, jarPath ), using a [scan] of the jar's entries
+	 */
+	public void addJar( final String bundle, final JarCache.Scan scan ) {
+		Objects.requireNonNull( bundle );
+		Objects.requireNonNull( scan );
+
+		final String prefix = RESOURCES_FOLDER_NAME + "/";
+
+		for( final JarCache.FileEntry file : scan.filesInFolder( RESOURCES_FOLDER_NAME ) ) {
+			if( !file.name().equals( prefix + FILENAME ) ) {
+				add( bundle, file.name().substring( prefix.length() ), file.size(), file.crc() );
+			}
+		}
+	}
+
+	private void add( final String bundle, final String path, final long size, final long crc ) {
+		String name = path;
+		String localization = "";
+
+		final int slashIndex = path.indexOf( '/' );
+
+		if( slashIndex != -1 && path.substring( 0, slashIndex ).endsWith( LPROJ_SUFFIX ) ) {
+			localization = path.substring( 0, slashIndex - LPROJ_SUFFIX.length() );
+			name = path.substring( slashIndex + 1 );
+		}
+
+		_bundles.add( bundle );
+
+		final List<Entry> entries = _entries.computeIfAbsent( localization + "/" + name, __ -> new ArrayList<>() );
+		final Entry entry = new Entry( name, localization, bundle, size, crc );
+
+		// A bundle can only contain a resource once, later additions replace earlier ones (as they would when copying) without changing the lookup order
+		for( int i = 0; i < entries.size(); i++ ) {
+			if( entries.get( i ).bundle().equals( bundle ) ) {
+				entries.set( i, entry );
+				return;
+			}
+		}
+
+		entries.add( entry );
+	}
+
+	/**
+	 * @return Every entry in the index, ordered by bundle (in the order bundles were first added) and then name
+	 */
+	public List<Entry> entries() {
+		final List<String> bundles = List.copyOf( _bundles );
+
+		return _entries.values()
+				.stream()
+				.flatMap( List::stream )
+				.sorted( Comparator.comparing( ( Entry entry ) -> bundles.indexOf( entry.bundle() ) ).thenComparing( Entry::localization ).thenComparing( Entry::name ) )
+				.toList();
+	}
+
+	/**
+	 * @return Resources present in more than one bundle, where the first one shadows the rest
+	 */
+	public List<List<Entry>> duplicates() {
+		return _entries.values()
+				.stream()
+				.filter( entries -> entries.size() > 1 && !PER_BUNDLE_NAMES.contains( entries.get( 0 ).name() ) )
+				.toList();
+	}
+
+	/**
+	 * Logs a warning for each resource that's shadowed by a resource with the same name in another bundle
+	 */
+	public void logDuplicates() {
+		for( final List<Entry> duplicates : duplicates() ) {
+			final Entry first = duplicates.get( 0 );
+			final String description = first.localization().isEmpty() ? first.name() : first.localization() + LPROJ_SUFFIX + "/" + first.name();
+			final List<String> bundles = duplicates.stream().map( Entry::bundle ).toList();
+			logger.warn( "Resource {} is present in multiple bundles {}. The one in {} shadows the others", description, bundles, first.bundle() );
+		}
+	}
+
+	/**
+	 * @return The index in it's serialized form
+	 */
+	public String toTSV() {
+		final StringBuilder b = new StringBuilder();
+		b.append( "# name\tlocalization\tbundle\tsize\tcrc32\n" );
+
+		for( final Entry entry : entries() ) {
+			b.append( entry.name() );
+			b.append( '\t' ).append( entry.localization() );
+			b.append( '\t' ).append( entry.bundle() );
+			b.append( '\t' ).append( entry.size() );
+			b.append( '\t' ).append( Long.toHexString( entry.crc() ) );
+			b.append( '\n' );
+		}
+
+		return b.toString();
+	}
+}
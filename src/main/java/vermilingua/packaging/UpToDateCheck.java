@@ -0,0 +1,168 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Describes every input of a build, allowing packaging to be skipped entirely if none of them changed since the last successful build.
+ *
+ * The description is a list of lines, with files represented by their SHA-256. It's stored in the target directory after a build,
+ * and the next build compares it's own description against it. We store the description itself rather than a hash of it, so we can tell what changed.
+ */
+
+public class UpToDateCheck {
+
+	private static final Logger logger = LoggerFactory.getLogger( UpToDateCheck.class );
+
+	/**
+	 * The lines describing the build's inputs
+	 */
+	private final List<String> _lines = new ArrayList<>();
+
+	/**
+	 * Position and number of the lines describing the principal jar, so they can be replaced by [updatePrincipalJar]
+	 */
+	private int _principalJarStart;
+	private int _principalJarCount;
+
+	/**
+	 * @param configuration Lines describing the plugin's configuration (including the plugin's version), since it affects the build's output as much as the project does
+	 *
+	 * @return A description of the inputs of packaging [sourceProject]
+	 */
+	public static UpToDateCheck of( final SourceProject sourceProject, final List<String> configuration ) {
+		Objects.requireNonNull( sourceProject );
+		Objects.requireNonNull( configuration );
+
+		final UpToDateCheck check = new UpToDateCheck();
+
+		configuration.forEach( line -> check.add( "configuration", line ) );
+
+		check.add( "type", sourceProject.type().name() );
+		check.add( "name", sourceProject.name() );
+		check.add( "version", sourceProject.version() );
+		check.add( "principalClass", String.valueOf( sourceProject.principalClassName() ) );
+
+		sourceProject.buildProperties().describe().forEach( line -> check.add( "buildProperties", line ) );
+
+		check._principalJarStart = check._lines.size();
+		check.addPath( "principalJar", sourceProject.principalJarPath() );
+		check._principalJarCount = check._lines.size() - check._principalJarStart;
+		check.addPath( "woresources", sourceProject.woresourcesPath() );
+		check.addPath( "components", sourceProject.componentsPath() );
+		check.addPath( "webserverResources", sourceProject.webserverResourcesPath() );
+
+		for( final Dependency dependency : sourceProject.dependencies() ) {
+			check.addPath( "dependency:%s:%s:%s".formatted( dependency.groupId(), dependency.artifactId(), dependency.version() ), dependency.file().toPath() );
+		}
+
+		return check;
+	}
+
+	/**
+	 * Describes the principal jar at [principalJarPath] again, for use after packaging has rewritten it (as building a framework does)
+	 */
+	public void updatePrincipalJar( final Path principalJarPath ) {
+		Objects.requireNonNull( principalJarPath );
+
+		final UpToDateCheck principalJar = new UpToDateCheck();
+		principalJar.addPath( "principalJar", principalJarPath );
+
+		final List<String> principalJarLines = _lines.subList( _principalJarStart, _principalJarStart + _principalJarCount );
+		principalJarLines.clear();
+		principalJarLines.addAll( principalJar._lines );
+		_principalJarCount = principalJar._lines.size();
+	}
+
+	private void add( final String name, final String value ) {
+		// Each line of the stored description must correspond to a single entry
+		_lines.add( (name + " " + value).replace( "\n", "\\n" ).replace( "\r", "\\r" ) );
+	}
+
+	/**
+	 * Adds the file at [path], or every file in the directory at [path], to the description
+	 */
+	private void addPath( final String name, final Path path ) {
+		if( !Files.exists( path ) ) {
+			add( name, "none" );
+			return;
+		}
+
+		if( !Files.isDirectory( path ) ) {
+			add( name, Util.sha256( path ) );
+			return;
+		}
+
+		try( final Stream<Path> paths = Files.walk( path ) ) {
+			for( final Path file : paths.filter( Files::isRegularFile ).sorted().toList() ) {
+				add( name + "/" + path.relativize( file ).toString().replace( '\\', '/' ), Util.sha256( file ) );
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * @return true if the description stored at [storedPath] by a previous build is identical to this one. Logs the first difference if not.
+	 */
+	public boolean isUpToDate( final Path storedPath ) {
+		Objects.requireNonNull( storedPath );
+
+		if( !Files.exists( storedPath ) ) {
+			return false;
+		}
+
+		final List<String> storedLines;
+
+		try {
+			storedLines = Files.readAllLines( storedPath );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		for( int i = 0; i < Math.max( storedLines.size(), _lines.size() ); i++ ) {
+			final String storedLine = i < storedLines.size() ? storedLines.get( i ) : null;
+			final String line = i < _lines.size() ? _lines.get( i ) : null;
+
+			if( !Objects.equals( storedLine, line ) ) {
+				logger.info( "Inputs changed since the last build ({} -> {})", storedLine, line );
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stores the description at [path], for comparison by the next build
+	 */
+	public void write( final Path path ) {
+		Objects.requireNonNull( path );
+		Util.writeStringToPath( String.join( "\n", _lines ) + "\n", path );
+	}
+
+	/**
+	 * Deletes the description stored at [path] (if any), so an interrupted or failed build isn't considered up to date
+	 */
+	public static void invalidate( final Path path ) {
+		Objects.requireNonNull( path );
+
+		try {
+			Files.deleteIfExists( path );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+}
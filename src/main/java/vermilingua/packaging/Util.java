@@ -1,36 +1,32 @@
 package vermilingua.packaging;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.CopyOption;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
-
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import java.util.zip.Deflater;
 
 public class Util {
 
@@ -50,29 +46,54 @@ public class Util {
 		}
 	}
 
+	/**
+	 * Copy the file at [sourcePath] to [destinationPath], creating the destination's parent directories if required and replacing the destination if it exists.
+	 * The default copy function for the directory copying methods.
+	 */
+	public static void copyFileReplacingExisting( final Path sourcePath, final Path destinationPath ) {
+		createParentDirectories( destinationPath );
+		copyFile( sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	/**
+	 * Creates the parent directories of [path], if missing
+	 */
+	public static void createParentDirectories( final Path path ) {
+		Objects.requireNonNull( path );
+
+		try {
+			Files.createDirectories( path.toAbsolutePath().getParent() );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
 	/**
 	 * Copy the contents of the directory specified by [sourceDirectory] into the directory specified by [destinationDirectory], maintaining the directory tree/hierarchy.
 	 *
 	 * Only files are copied. Parent directories at the destination are created on demand as needed. Empty directories in the source are not reproduced at the destination.
 	 */
 	public static void copyContentsOfDirectoryToDirectory( final Path sourceDirectory, final Path destinationDirectory ) {
+		copyContentsOfDirectoryToDirectory( sourceDirectory, destinationDirectory, Util::copyFileReplacingExisting );
+	}
+
+	/**
+	 * Same as copyContentsOfDirectoryToDirectory( sourceDirectory, destinationDirectory ) but uses [copyFunction] to perform the actual copying of each file (source, destination).
+	 * Nothing is written to the destination by this method itself, so [copyFunction] is responsible for creating any parent directories.
+	 */
+	public static void copyContentsOfDirectoryToDirectory( final Path sourceDirectory, final Path destinationDirectory, final BiConsumer<Path, Path> copyFunction ) {
 		Objects.requireNonNull( sourceDirectory );
 		Objects.requireNonNull( destinationDirectory );
+		Objects.requireNonNull( copyFunction );
 
-		try {
-			Files.walk( sourceDirectory )
+		try( final Stream<Path> paths = Files.walk( sourceDirectory ) ) {
+			paths
 					.filter( sourcePath -> !Files.isDirectory( sourcePath ) )
 					.forEach( sourcePath -> {
 						final Path relativePath = sourceDirectory.relativize( sourcePath );
 						final Path targetPath = destinationDirectory.resolve( relativePath );
-
-						try {
-							Files.createDirectories( targetPath.getParent() );
-						}
-						catch( final IOException e ) {
-							throw new UncheckedIOException( e );
-						}
-						copyFile( sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING );
+						copyFunction.accept( sourcePath, targetPath );
 					} );
 		}
 		catch( final IOException e ) {
@@ -86,90 +107,103 @@ public class Util {
 	 * Directories with names ending with [directorySuffixesToNotFlatten] are considered "bundles", i.e. they're essentially treated like files and copied in their entirety.
 	 *
 	 * Directories with names ending with [directorySuffixesToFlattenInto] are preserved at the destination, but their contents are then flattened into them (using the same rules). This is used for localization folders (`.lproj`) where components need to live under a preserved parent folder but still have their internal structure flattened.
+	 *
+	 * If multiple files flatten to the same destination, a warning listing all of them is logged and the last one in path order wins.
+	 * Each destination directory is created once, before copying starts.
 	 */
 	public static void copyContentsOfDirectoryToDirectoryFlatten( final Path sourceDirectory, final Path destinationDirectory, final Collection<String> directorySuffixesToNotFlatten, final Collection<String> directorySuffixesToFlattenInto ) {
-		Objects.requireNonNull( sourceDirectory );
-		Objects.requireNonNull( destinationDirectory );
-		Objects.requireNonNull( directorySuffixesToNotFlatten );
-		Objects.requireNonNull( directorySuffixesToFlattenInto );
+		final ComponentFlattener.Flattening flattening = ComponentFlattener.flatten( sourceDirectory, destinationDirectory, directorySuffixesToNotFlatten, directorySuffixesToFlattenInto ).checkCollisions( false );
 
-		final FileVisitor<? super Path> visitor = new SimpleFileVisitor<>() {
-
-			@Override
-			public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes arg1 ) throws IOException {
-
-				// Don't match the source directory itself against our suffix rules — we want to flatten its contents into the destination.
-				// Without this guard, if the source directory's name happens to end in a flatten-into suffix (e.g. recursing into an `.lproj`), we'd recurse into it infinitely.
-				if( dir.equals( sourceDirectory ) ) {
-					return FileVisitResult.CONTINUE;
-				}
-
-				final String dirName = dir.getFileName().toString();
-
-				// If this is a bundle/folder we should not flatten, copy it in it's entirety (with all it's contents) and don't walk deeper into it
-				if( hasAnyOfSuffixes( dirName, directorySuffixesToNotFlatten ) ) {
-					copyContentsOfDirectoryToDirectory( dir, destinationDirectory.resolve( dirName ) );
-					return FileVisitResult.SKIP_SUBTREE;
-				}
+		for( final Path directory : flattening.destinationDirectories() ) {
+			try {
+				Files.createDirectories( directory );
+			}
+			catch( final IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
 
-				// If this is a folder that acts as a flatten target (e.g. `.lproj`), create it at the destination and recursively flatten its contents into it
-				if( hasAnyOfSuffixes( dirName, directorySuffixesToFlattenInto ) ) {
-					final Path nestedDestination = folder( destinationDirectory.resolve( dirName ) );
-					copyContentsOfDirectoryToDirectoryFlatten( dir, nestedDestination, directorySuffixesToNotFlatten, directorySuffixesToFlattenInto );
-					return FileVisitResult.SKIP_SUBTREE;
-				}
+		flattening.forEach( ( source, destination ) -> copyFile( source, destination, StandardCopyOption.REPLACE_EXISTING ) );
+	}
 
-				// In this case, this is a regular directory so we just keep on walking
-				return FileVisitResult.CONTINUE;
-			}
+	/**
+	 * Same as copyContentsOfDirectoryToDirectoryFlatten( sourceDirectory, destinationDirectory, directorySuffixesToNotFlatten, directorySuffixesToFlattenInto ) but uses [copyFunction] to perform the actual copying of each file (source, destination),
+	 * invoking it on the calling thread in destination order.
+	 * Nothing is written to the destination by this method itself, so [copyFunction] is responsible for creating any parent directories.
+	 */
+	public static void copyContentsOfDirectoryToDirectoryFlatten( final Path sourceDirectory, final Path destinationDirectory, final Collection<String> directorySuffixesToNotFlatten, final Collection<String> directorySuffixesToFlattenInto, final BiConsumer<Path, Path> copyFunction ) {
+		Objects.requireNonNull( copyFunction );
+		ComponentFlattener.flatten( sourceDirectory, destinationDirectory, directorySuffixesToNotFlatten, directorySuffixesToFlattenInto ).checkCollisions( false ).forEach( copyFunction );
+	}
 
-			@Override
-			public FileVisitResult visitFile( Path file, BasicFileAttributes arg1 ) throws IOException {
-				// Regular standalone files just get copied. preVisitDirectory() will already have excluded and copied files inside bundles
-				copyFile( file, destinationDirectory.resolve( file.getFileName() ), StandardCopyOption.REPLACE_EXISTING );
-				return FileVisitResult.CONTINUE;
-			}
-		};
+	/**
+	 * Writes [string] to a file specified by [path]
+	 */
+	public static void writeStringToPath( final String string, final Path path ) {
+		Objects.requireNonNull( string );
+		Objects.requireNonNull( path );
 
 		try {
-			Files.walkFileTree( sourceDirectory, visitor );
+			Files.write( path, string.getBytes( StandardCharsets.UTF_8 ) );
 		}
-		catch( IOException e ) {
+		catch( final IOException e ) {
 			throw new UncheckedIOException( e );
 		}
 	}
 
 	/**
-	 * @return true if the given [string] ends with any of the strings in [endings]
+	 * Writes [bytes] to a file specified by [path]
 	 */
-	private static boolean hasAnyOfSuffixes( String string, Collection<String> suffixes ) {
-		Objects.requireNonNull( string );
-		Objects.requireNonNull( suffixes );
+	public static void writeBytesToPath( final byte[] bytes, final Path path ) {
+		Objects.requireNonNull( bytes );
+		Objects.requireNonNull( path );
 
-		for( final String suffix : suffixes ) {
-			if( string.endsWith( "." + suffix ) ) {
-				return true;
-			}
+		try {
+			Files.write( path, bytes );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
 		}
-
-		return false;
 	}
 
 	/**
-	 * Writes [string] to a file specified by [path]
+	 * @return The size of the file at [path] in bytes
 	 */
-	public static void writeStringToPath( final String string, final Path path ) {
-		Objects.requireNonNull( string );
+	public static long size( final Path path ) {
 		Objects.requireNonNull( path );
 
 		try {
-			Files.write( path, string.getBytes( StandardCharsets.UTF_8 ) );
+			return Files.size( path );
 		}
 		catch( final IOException e ) {
 			throw new UncheckedIOException( e );
 		}
 	}
 
+	/**
+	 * @return [string] as a quoted JSON string
+	 */
+	public static String jsonString( final String string ) {
+		final StringBuilder b = new StringBuilder( "\"" );
+
+		for( final char c : string.toCharArray() ) {
+			switch( c ) {
+				case '"' -> b.append( "\\\"" );
+				case '\\' -> b.append( "\\\\" );
+				default -> {
+					if( c < 0x20 ) {
+						b.append( "\\u%04x".formatted( (int)c ) );
+					}
+					else {
+						b.append( c );
+					}
+				}
+			}
+		}
+
+		return b.append( '"' ).toString();
+	}
+
 	/**
 	 * @return The value of the named string template resource (stored under src/main/resources/templates
 	 */
@@ -234,95 +268,125 @@ public class Util {
 	 * Copies the folder specified by folderName to destinationPath.
 	 * Copies the entire folder, not just the content (as in, you will end up with [destinationPath]/[folderName]/...
 	 *
-	 * FIXME: Don't copy the folder if it's empty // Hugi 2021-08-07
+	 * The jar is opened and it's entries walked only once. Directories are only created for files actually extracted,
+	 * so if the folder is missing from the jar or contains no files, nothing is written (not even [destinationPath]).
+	 *
+	 * @return The paths of the files written
 	 */
-	public static void copyFolderFromJarToPath( final String folderName, final Path sourceJarPath, final Path destinationPath ) {
+	public static List<Path> copyFolderFromJarToPath( final String folderName, final Path sourceJarPath, final Path destinationPath ) {
 		Objects.requireNonNull( folderName );
 		Objects.requireNonNull( sourceJarPath );
 		Objects.requireNonNull( destinationPath );
 
-		try( final JarFile jarFile = new JarFile( sourceJarPath.toFile() )) {
+		final String prefix = folderName + "/";
+		final Path normalizedDestinationPath = destinationPath.toAbsolutePath().normalize();
+		final List<Path> writtenPaths = new ArrayList<>();
+
+		// We don't verify signatures of the jars we extract from, so we skip the overhead of that
+		try( final JarFile jarFile = new JarFile( sourceJarPath.toFile(), false )) {
 			final Enumeration<JarEntry> entries = jarFile.entries();
 
 			while( entries.hasMoreElements() ) {
 				final JarEntry entry = entries.nextElement();
 
-				if( entry.getName().startsWith( folderName + "/" ) ) {
-					final Path targetPath = destinationPath.resolve( entry.getName() );
+				if( !entry.isDirectory() && entry.getName().startsWith( prefix ) ) {
+					final Path targetPath = normalizedDestinationPath.resolve( entry.getName() ).normalize();
 
-					if( entry.isDirectory() ) {
-						Files.createDirectories( targetPath );
+					if( !targetPath.startsWith( normalizedDestinationPath ) ) {
+						throw new IllegalArgumentException( "Jar entry '%s' in %s points outside of the extraction directory".formatted( entry.getName(), sourceJarPath ) );
 					}
-					else {
-						try( final InputStream inStream = jarFile.getInputStream( entry )) {
-							Files.copy( inStream, targetPath, StandardCopyOption.REPLACE_EXISTING );
-						}
+
+					Files.createDirectories( targetPath.getParent() );
+
+					try( final InputStream inStream = jarFile.getInputStream( entry )) {
+						Files.copy( inStream, targetPath, StandardCopyOption.REPLACE_EXISTING );
 					}
+
+					writtenPaths.add( targetPath );
 				}
 			}
 		}
 		catch( final IOException e ) {
 			throw new UncheckedIOException( e );
 		}
+
+		return writtenPaths;
 	}
 
 	/**
-	 * Writes the contents of the folder specified by [sourcePath] into a folder named [folder] in the root of  [destinationJarPath]
+	 * Writes the contents of the folder specified by [sourcePath] into a folder named [folderName] in the root of [destinationJarPath], replacing existing entries with the same names.
+	 * Does nothing if the folder specified by sourcePath does not exist.
 	 *
-	 * - Does nothing if the folder specified by sourcePath does not exist
-	 * - Creates the destination folder if missing.
-	 *
-	 * FIXME: This method currently silently overwrites existing files in the jar. We probably want to be more intelligent about that // Hugi 2022-09-28
+	 * @deprecated Rewrites the entire jar on every invocation. Use JarRewriter, which makes any number of additions in a single pass.
 	 */
+	@Deprecated
 	public static void copyContentsOfFolderAtPathToFolderInJar( final Path sourcePath, final String folderName, final Path destinationJarPath ) {
 		Objects.requireNonNull( sourcePath );
 		Objects.requireNonNull( folderName );
 		Objects.requireNonNull( destinationJarPath );
 
 		if( Files.exists( sourcePath ) ) {
-			final URI uri = URI.create( "jar:" + destinationJarPath.toUri().toString() );
-
-			try( FileSystem zipfs = FileSystems.newFileSystem( uri, Collections.emptyMap() )) {
-				Files.walk( sourcePath ).forEach( folderEntry -> {
-
-					try {
-						if( !Files.isDirectory( folderEntry ) ) {
-							final Path relativePath = sourcePath.relativize( folderEntry );
-							final Path pathInZipFile = zipfs.getPath( folderName + "/" + relativePath.toString() ); // FIXME: This is what I hate, all this string munging // Hugi 2021-07-10
-							Files.createDirectories( pathInZipFile );
-							Files.copy( folderEntry, pathInZipFile, StandardCopyOption.REPLACE_EXISTING );
-						}
-					}
-					catch( final IOException e ) {
-						throw new UncheckedIOException( e );
-					}
-				} );
-			}
-			catch( final IOException e ) {
-				throw new UncheckedIOException( e );
-			}
+			final JarRewriter jarRewriter = new JarRewriter( destinationJarPath );
+			jarRewriter.addContentsOfDirectory( sourcePath, folderName );
+			jarRewriter.write();
 		}
 	}
 
 	/**
 	 * Writes [string] as a file at [destinationFilePathInsideJar] to the jar file at [destinationJarPath]
+	 *
+	 * @deprecated Rewrites the entire jar on every invocation. Use JarRewriter, which makes any number of additions in a single pass.
 	 */
+	@Deprecated
 	public static void writeStringToPathInJar( final String string, final String destinationFilePathInsideJar, final Path destinationJarPath ) {
 		Objects.requireNonNull( string );
 		Objects.requireNonNull( destinationFilePathInsideJar );
 		Objects.requireNonNull( destinationJarPath );
 
-		final URI uri = URI.create( "jar:" + destinationJarPath.toUri().toString() );
+		final JarRewriter jarRewriter = new JarRewriter( destinationJarPath );
+		jarRewriter.addString( destinationFilePathInsideJar, string );
+		jarRewriter.write();
+	}
+
+	/**
+	 * @return The SHA-256 digest of the file at [path] as a lowercase hex string
+	 */
+	public static String sha256( final Path path ) {
+		Objects.requireNonNull( path );
 
-		try( FileSystem zipfs = FileSystems.newFileSystem( uri, Collections.emptyMap() )) {
-			final Path pathInZipFile = zipfs.getPath( destinationFilePathInsideJar );
-			Files.writeString( pathInZipFile, string, StandardCharsets.UTF_8 );
+		try( final InputStream stream = Files.newInputStream( path )) {
+			return sha256( stream );
 		}
 		catch( final IOException e ) {
 			throw new UncheckedIOException( e );
 		}
 	}
 
+	/**
+	 * @return The SHA-256 digest of the remaining content of [stream] as a lowercase hex string. Doesn't close the stream.
+	 */
+	public static String sha256( final InputStream stream ) {
+		Objects.requireNonNull( stream );
+
+		try {
+			final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+			final byte[] buffer = new byte[65536];
+			int read;
+
+			while( (read = stream.read( buffer )) != -1 ) {
+				digest.update( buffer, 0, read );
+			}
+
+			return HexFormat.of().formatHex( digest.digest() );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		catch( final NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
 	/**
 	 * Recursively deletes the directory at [path] and all its contents. Does nothing if the path does not exist.
 	 */
@@ -383,42 +447,30 @@ public class Util {
 	 * @param targetFile The destination tar.gz file
 	 */
 	public static void createTarGz( final Path sourceDirectory, final Path targetFile ) {
-		try( final OutputStream fos = Files.newOutputStream( targetFile );
-			 final BufferedOutputStream bos = new BufferedOutputStream( fos );
-			 final GzipCompressorOutputStream gzos = new GzipCompressorOutputStream( bos );
-			 final TarArchiveOutputStream taos = new TarArchiveOutputStream( gzos ) ) {
-	
-			taos.setLongFileMode( TarArchiveOutputStream.LONGFILE_GNU );
-	
-			final Path parentDir = sourceDirectory.getParent();
-	
-			try( Stream<Path> paths = Files.walk( sourceDirectory ) ) {
-				paths.forEach( path -> {
-					try {
-						final String entryName = parentDir.relativize( path ).toString();
-						final TarArchiveEntry entry = new TarArchiveEntry( path, entryName );
-	
-						// Preserve executable permission
-						if( Files.isExecutable( path ) && !Files.isDirectory( path ) ) {
-							entry.setMode( 0755 );
-						}
-	
-						taos.putArchiveEntry( entry );
-	
-						if( Files.isRegularFile( path ) ) {
-							Files.copy( path, taos );
-						}
-	
-						taos.closeArchiveEntry();
-					}
-					catch( final IOException e ) {
-						throw new UncheckedIOException( e );
-					}
-				});
-			}
-		}
-		catch( final IOException e ) {
-			throw new UncheckedIOException( e );
-		}
+		createTarGz( sourceDirectory, targetFile, 1, Deflater.DEFAULT_COMPRESSION );
+	}
+
+	/**
+	 * Creates a tar.gz archive of the given directory.
+	 *
+	 * @param sourceDirectory The directory to archive
+	 * @param targetFile The destination tar.gz file
+	 * @param threads Number of threads to compress on. With more than one, the archive gets compressed in independent blocks in parallel (still a standard gzip file)
+	 * @param level gzip compression level (0-9, or -1 for the default)
+	 */
+	public static void createTarGz( final Path sourceDirectory, final Path targetFile, final int threads, final int level ) {
+		createArchive( sourceDirectory, targetFile, ArchiveFormat.TarGz, new ArchiveWriter.Settings( threads, level, false, null ) );
+	}
+
+	/**
+	 * Creates an archive of the given directory in the given format
+	 *
+	 * @param sourceDirectory The directory to archive
+	 * @param targetFile The destination archive file
+	 * @param format The archive format
+	 * @param settings Compression settings
+	 */
+	public static void createArchive( final Path sourceDirectory, final Path targetFile, final ArchiveFormat format, final ArchiveWriter.Settings settings ) {
+		ArchiveWriter.archiveDirectory( sourceDirectory, targetFile, format, settings );
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,392 @@
+package vermilingua.packaging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of every file written into a WOA bundle, and where it came from.
+ *
+ * The manifest is stored in the root of the WOA, one line per destination file. On the next build, it allows us to skip copying files whose source hasn't changed
+ * and to delete files from the bundle that no longer have a source.
+ */
+
+public class WOAManifest {
+
+	private static final Logger logger = LoggerFactory.getLogger( WOAManifest.class );
+
+	/**
+	 * Name of the manifest file in the WOA root
+	 */
+	public static final String FILENAME = ".vermilingua-manifest";
+
+	/**
+	 * Source "path" recorded for files we generate ourselves (config.txt, Info.plist etc.)
+	 */
+	private static final String GENERATED = "<generated>";
+
+	/**
+	 * A single file in the bundle
+	 *
+	 * @param source Absolute path of the file the destination was copied from (or extracted from, in the case of jars)
+	 * @param size Size of the source, in bytes
+	 * @param lastModified Last modification time of the source, in milliseconds
+	 * @param hash SHA-256 of the source's content. Only recorded if checksums are enabled, otherwise an empty string
+	 */
+	public record Entry( String source, long size, long lastModified, String hash ) {}
+
+	/**
+	 * Root of the WOA, all destination paths in the manifest are relative to this
+	 */
+	private final Path _rootPath;
+
+	/**
+	 * Indicates that we use content hashes (rather than just size and modification time) to determine if a source has changed.
+	 */
+	private final boolean _checksums;
+
+	/**
+	 * The manifest from the previous build, keyed by destination path relative to the WOA root
+	 */
+	private final Map<String, Entry> _previous;
+
+	/**
+	 * The manifest from the previous build, keyed by source path (only the last destination of each source)
+	 */
+	private final Map<String, Entry> _previousBySource = new TreeMap<>();
+
+	/**
+	 * The manifest for the current build, keyed by destination path relative to the WOA root
+	 */
+	private final Map<String, Entry> _current = new ConcurrentHashMap<>();
+
+	private WOAManifest( final Path rootPath, final boolean checksums, final Map<String, Entry> previous ) {
+		_rootPath = rootPath;
+		_checksums = checksums;
+		_previous = previous;
+		_previous.values().forEach( entry -> _previousBySource.put( entry.source(), entry ) );
+	}
+
+	/**
+	 * @return The manifest for the WOA at [rootPath], with the manifest of the previous build loaded (if present)
+	 */
+	public static WOAManifest load( final Path rootPath, final boolean checksums ) {
+		Objects.requireNonNull( rootPath );
+
+		final Map<String, Entry> previous = new TreeMap<>();
+		final Path manifestPath = rootPath.resolve( FILENAME );
+
+		if( Files.exists( manifestPath ) ) {
+			try {
+				for( final String line : Files.readAllLines( manifestPath, StandardCharsets.UTF_8 ) ) {
+					final String[] parts = line.split( "\t", -1 );
+
+					if( parts.length == 5 ) {
+						previous.put( parts[0], new Entry( parts[1], Long.parseLong( parts[2] ), Long.parseLong( parts[3] ), parts[4] ) );
+					}
+				}
+			}
+			catch( final IOException | NumberFormatException e ) {
+				// A broken manifest just means we do a full build
+				logger.warn( "Unable to read {}, performing a full copy: {}", manifestPath, e.getMessage() );
+				previous.clear();
+			}
+		}
+
+		return new WOAManifest( rootPath, checksums, previous );
+	}
+
+	/**
+	 * Deletes any manifest left in the WOA at [rootPath] by a previous incremental build.
+	 *
+	 * Invoked by non-incremental builds, since they overwrite the bundle without keeping the manifest up to date.
+	 */
+	public static void delete( final Path rootPath ) {
+		Objects.requireNonNull( rootPath );
+
+		try {
+			Files.deleteIfExists( rootPath.resolve( FILENAME ) );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Copies [sourcePath] to [destinationPath], unless the destination is already an up to date copy of the source.
+	 */
+	public void copyFile( final Path sourcePath, final Path destinationPath ) {
+		copyFile( sourcePath, destinationPath, ( source, destination ) -> Util.copyFile( source, destination, StandardCopyOption.REPLACE_EXISTING ) );
+	}
+
+	/**
+	 * Uses [copyFunction] to copy [sourcePath] to [destinationPath], unless the destination is already an up to date copy of the source.
+	 */
+	public void copyFile( final Path sourcePath, final Path destinationPath, final BiConsumer<Path, Path> copyFunction ) {
+		Objects.requireNonNull( sourcePath );
+		Objects.requireNonNull( destinationPath );
+		Objects.requireNonNull( copyFunction );
+
+		final Entry entry = entryForSource( sourcePath );
+		final String key = key( destinationPath );
+
+		if( !isUpToDate( key, entry, destinationPath ) ) {
+			copyFunction.accept( sourcePath, destinationPath );
+		}
+
+		_current.put( key, entry );
+	}
+
+	/**
+	 * Writes [string] to [destinationPath], unless the file already has that exact content (in which case it's left untouched, preserving it's modification time)
+	 *
+	 * @return true if the file was written
+	 */
+	public boolean writeString( final String string, final Path destinationPath ) {
+		Objects.requireNonNull( string );
+		Objects.requireNonNull( destinationPath );
+
+		return writeBytes( string.getBytes( StandardCharsets.UTF_8 ), destinationPath );
+	}
+
+	/**
+	 * Writes [bytes] to [destinationPath], unless the file already has that exact content (in which case it's left untouched, preserving it's modification time)
+	 *
+	 * @return true if the file was written
+	 */
+	public boolean writeBytes( final byte[] bytes, final Path destinationPath ) {
+		Objects.requireNonNull( bytes );
+		Objects.requireNonNull( destinationPath );
+
+		final boolean write = !hasContent( destinationPath, bytes );
+
+		if( write ) {
+			Util.writeBytesToPath( bytes, destinationPath );
+		}
+
+		_current.put( key( destinationPath ), new Entry( GENERATED, bytes.length, 0, "" ) );
+		return write;
+	}
+
+	/**
+	 * @return true if the files previously extracted from [sourcePath] are all present and up to date. If so, they are carried over into the current manifest.
+	 */
+	public boolean carryOverIfUpToDate( final Path sourcePath ) {
+		Objects.requireNonNull( sourcePath );
+
+		final String source = sourcePath.toAbsolutePath().toString();
+		final Map<String, Entry> previousForSource = new TreeMap<>();
+
+		_previous.forEach( ( key, entry ) -> {
+			if( entry.source().equals( source ) ) {
+				previousForSource.put( key, entry );
+			}
+		} );
+
+		if( previousForSource.isEmpty() ) {
+			return false;
+		}
+
+		final Entry entry = entryForSource( sourcePath );
+
+		for( final Map.Entry<String, Entry> previous : previousForSource.entrySet() ) {
+			if( !sameSource( previous.getValue(), entry ) || !Files.exists( _rootPath.resolve( previous.getKey() ) ) ) {
+				return false;
+			}
+		}
+
+		_current.putAll( previousForSource );
+		return true;
+	}
+
+	/**
+	 * Records that [destinationPaths] were extracted from [sourcePath] (i.e. from a jar file) during this build
+	 */
+	public void recordExtracted( final Path sourcePath, final Collection<Path> destinationPaths ) {
+		Objects.requireNonNull( sourcePath );
+		Objects.requireNonNull( destinationPaths );
+
+		final Entry entry = entryForSource( sourcePath );
+
+		for( final Path destinationPath : destinationPaths ) {
+			_current.put( key( destinationPath ), entry );
+		}
+	}
+
+	/**
+	 * Deletes every file in the WOA that wasn't written or carried over during the current build, along with any directories left empty by the deletion.
+	 *
+	 * @return The number of files deleted
+	 */
+	public int pruneStaleFiles() {
+		final List<Path> stalePaths = new ArrayList<>();
+
+		try {
+			Files.walkFileTree( _rootPath, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+					final String key = key( file );
+
+					if( !key.equals( FILENAME ) && !_current.containsKey( key ) ) {
+						stalePaths.add( file );
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			} );
+
+			for( final Path stalePath : stalePaths ) {
+				logger.debug( "Deleting stale file {}", stalePath );
+				Files.delete( stalePath );
+				deleteEmptyParents( stalePath.getParent() );
+			}
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		return stalePaths.size();
+	}
+
+	/**
+	 * Writes the current manifest to the WOA root
+	 */
+	public void write() {
+		final StringBuilder b = new StringBuilder();
+
+		new TreeMap<>( _current ).forEach( ( key, entry ) -> {
+			b.append( key );
+			b.append( '\t' ).append( entry.source() );
+			b.append( '\t' ).append( entry.size() );
+			b.append( '\t' ).append( entry.lastModified() );
+			b.append( '\t' ).append( entry.hash() );
+			b.append( '\n' );
+		} );
+
+		Util.writeStringToPath( b.toString(), _rootPath.resolve( FILENAME ) );
+	}
+
+	/**
+	 * @return The destination entries recorded during the current build, keyed by path relative to the WOA root
+	 */
+	public Map<String, Entry> entries() {
+		return new TreeMap<>( _current );
+	}
+
+	/**
+	 * @return true if the destination at [key] was written by the previous build from an identical source, and still looks intact
+	 */
+	private boolean isUpToDate( final String key, final Entry entry, final Path destinationPath ) {
+		final Entry previous = _previous.get( key );
+
+		if( previous == null || !previous.source().equals( entry.source() ) || !sameSource( previous, entry ) ) {
+			return false;
+		}
+
+		try {
+			return Files.isRegularFile( destinationPath ) && Files.size( destinationPath ) == entry.size();
+		}
+		catch( final IOException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if the two entries describe the same source content
+	 */
+	private boolean sameSource( final Entry previous, final Entry current ) {
+		if( previous.size() != current.size() ) {
+			return false;
+		}
+
+		if( previous.lastModified() == current.lastModified() ) {
+			return true;
+		}
+
+		// A fresh checkout will have touched every modification time, so we fall back to comparing content if we have the hashes
+		return _checksums && !current.hash().isEmpty() && current.hash().equals( previous.hash() );
+	}
+
+	private Entry entryForSource( final Path sourcePath ) {
+		final String source = sourcePath.toAbsolutePath().toString();
+		final BasicFileAttributes attributes;
+
+		try {
+			attributes = Files.readAttributes( sourcePath, BasicFileAttributes.class );
+		}
+		catch( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+
+		final long size = attributes.size();
+		final long lastModified = attributes.lastModifiedTime().toMillis();
+		return new Entry( source, size, lastModified, hash( sourcePath, _previousBySource.get( source ), size, lastModified ) );
+	}
+
+	/**
+	 * @return The hash to record for the source at [sourcePath] (of [size] and [lastModified]), given it's [previous] entry (null if it's new).
+	 * A source with the same size and modification time as in the previous build carries it's previous hash forward, so a build where nothing changed doesn't read the sources' content at all.
+	 * The content is only hashed if the source is new or has been touched, which is when we need the hash to compare (or copy the source anyway).
+	 */
+	private String hash( final Path sourcePath, final Entry previous, final long size, final long lastModified ) {
+		if( !_checksums ) {
+			return "";
+		}
+
+		if( previous != null && previous.size() == size && previous.lastModified() == lastModified && !previous.hash().isEmpty() ) {
+			return previous.hash();
+		}
+
+		return Util.sha256( sourcePath );
+	}
+
+	/**
+	 * @return The manifest key for the given destination path, i.e. the path relative to the WOA root using forward slashes
+	 */
+	private String key( final Path destinationPath ) {
+		return _rootPath.toAbsolutePath().normalize().relativize( destinationPath.toAbsolutePath().normalize() ).toString().replace( '\\', '/' );
+	}
+
+	private static boolean hasContent( final Path path, final byte[] bytes ) {
+		try {
+			return Files.isRegularFile( path ) && Files.size( path ) == bytes.length && Arrays.equals( Files.readAllBytes( path ), bytes );
+		}
+		catch( final IOException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes [directory] and it's parents, for as long as they're empty (stopping at the WOA root)
+	 */
+	private void deleteEmptyParents( Path directory ) throws IOException {
+		while( directory != null && !directory.equals( _rootPath ) && directory.startsWith( _rootPath ) ) {
+			try( var stream = Files.list( directory ) ) {
+				if( stream.findAny().isPresent() ) {
+					return;
+				}
+			}
+
+			Files.delete( directory );
+			directory = directory.getParent();
+		}
+	}
+}
@@ -1,9 +1,18 @@
 package vermilingua.maven.it;
 
 import static com.soebes.itf.extension.assertj.MavenITAssertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
 
 import com.soebes.itf.jupiter.extension.MavenJupiterExtension;
+import com.soebes.itf.jupiter.extension.MavenProjectSources;
 import com.soebes.itf.jupiter.extension.MavenTest;
+import com.soebes.itf.jupiter.extension.SystemProperty;
 import com.soebes.itf.jupiter.maven.MavenExecutionResult;
 
 /**
@@ -18,4 +27,26 @@ public class PackageMojoIT {
 		assertThat(result).isSuccessful();
 		return;
 	}
+
+	/**
+	 * An incremental build writes it's manifest into the WOA, but the manifest
+	 * describes the build machine's files and must never be archived. Builds the canBuild project.
+	 */
+	@MavenTest
+	@MavenProjectSources(sources = "vermilingua/maven/it/PackageMojoIT/canBuild")
+	@SystemProperty(value = "incremental", content = "true")
+	@SystemProperty(value = "createArchives", content = "true")
+	@SystemProperty(value = "archiveFormat", content = "zip")
+	public void canBuildIncrementalArchives(MavenExecutionResult result) throws IOException {
+		assertThat(result).isSuccessful();
+
+		Path target = result.getMavenProjectResult().getTargetProjectDirectory().resolve("target");
+		assertTrue(Files.exists(target.resolve("HelloWorld.woa/.vermilingua-manifest")));
+
+		try (ZipFile archive = new ZipFile(target.resolve("HelloWorld.woapplication.zip").toFile())) {
+			assertTrue(archive.getEntry("HelloWorld.woa/Contents/Info.plist") != null);
+			assertNull(archive.getEntry("HelloWorld.woa/.vermilingua-manifest"));
+		}
+		return;
+	}
 }
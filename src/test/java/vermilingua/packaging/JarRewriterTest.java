@@ -0,0 +1,209 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on {@link JarRewriter} class.
+ */
+public class JarRewriterTest {
+	@TempDir
+	Path tempDir;
+
+	private Path jarPath;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		jarPath = tempDir.resolve("framework.jar");
+
+		try (OutputStream out = Files.newOutputStream(jarPath); ZipOutputStream zip = new ZipOutputStream(out)) {
+			putDirectory(zip, "META-INF/");
+			putEntry(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n", ZipEntry.DEFLATED);
+			putDirectory(zip, "fw/");
+			putEntry(zip, "fw/Framework.class", "class ".repeat(1000), ZipEntry.DEFLATED);
+			putEntry(zip, "fw/Stored.class", "stored", ZipEntry.STORED);
+			putDirectory(zip, "Resources/");
+			putEntry(zip, "Resources/Info.plist", "old plist", ZipEntry.DEFLATED);
+		}
+		return;
+	}
+
+	@Test
+	public void copiesExistingEntriesByteForByte() throws IOException {
+		Map<String, RawEntry> before = rawEntries(jarPath);
+
+		JarRewriter jarRewriter = new JarRewriter(jarPath);
+		jarRewriter.addString("Resources/Properties", "alpha=beta");
+		jarRewriter.write();
+
+		Map<String, RawEntry> after = rawEntries(jarPath);
+
+		for (RawEntry entry : before.values()) {
+			RawEntry rewritten = after.get(entry.name());
+			assertNotNull(rewritten, entry.name());
+			assertEquals(entry.method(), rewritten.method(), entry.name());
+			assertEquals(entry.crc(), rewritten.crc(), entry.name());
+			assertEquals(entry.time(), rewritten.time(), entry.name());
+			assertArrayEquals(entry.rawBytes(), rewritten.rawBytes(), entry.name());
+		}
+
+		// Existing entries keep their order, with the additions after them
+		List<String> names = new ArrayList<>(after.keySet());
+		assertEquals(new ArrayList<>(before.keySet()), names.subList(0, before.size()));
+		assertEquals(List.of("Resources/Properties"), names.subList(before.size(), names.size()));
+		return;
+	}
+
+	@Test
+	public void replacesEntriesWithTheSameName() throws IOException {
+		JarRewriter jarRewriter = new JarRewriter(jarPath);
+		jarRewriter.addString("Resources/Info.plist", "new plist");
+		jarRewriter.write();
+
+		assertEquals(1, Collections.frequency(new ArrayList<>(rawEntries(jarPath).keySet()), "Resources/Info.plist"));
+		assertEquals("new plist", content(jarPath, "Resources/Info.plist"));
+		assertEquals("stored", content(jarPath, "fw/Stored.class"));
+		return;
+	}
+
+	@Test
+	public void lastAdditionWins() throws IOException {
+		Path source = tempDir.resolve("Info.plist");
+		Files.writeString(source, "file plist");
+
+		JarRewriter jarRewriter = new JarRewriter(jarPath);
+		jarRewriter.addString("Resources/Info.plist", "string plist");
+		jarRewriter.addFile("Resources/Info.plist", source);
+		jarRewriter.write();
+
+		assertEquals("file plist", content(jarPath, "Resources/Info.plist"));
+		return;
+	}
+
+	@Test
+	public void addsDirectoryContentsWithDirectoryEntries() throws IOException {
+		Path directory = tempDir.resolve("webserver-resources");
+		Files.createDirectories(directory.resolve("css/print"));
+		Files.writeString(directory.resolve("app.js"), "alert()");
+		Files.writeString(directory.resolve("css/print/app.css"), "body {}");
+
+		Instant timestamp = Instant.parse("2026-04-21T13:37:00Z");
+		JarRewriter jarRewriter = new JarRewriter(jarPath, timestamp);
+		jarRewriter.addContentsOfDirectory(directory, "WebServerResources");
+		jarRewriter.addContentsOfDirectory(tempDir.resolve("missing"), "Components");
+		jarRewriter.write();
+
+		Map<String, RawEntry> entries = rawEntries(jarPath);
+		List<String> added = new ArrayList<>(entries.keySet()).subList(7, entries.size());
+		assertEquals(List.of("WebServerResources/", "WebServerResources/app.js", "WebServerResources/css/", "WebServerResources/css/print/", "WebServerResources/css/print/app.css"), added);
+		assertEquals("body {}", content(jarPath, "WebServerResources/css/print/app.css"));
+		assertEquals(ArchiveWriter.zipTime(timestamp), entries.get("WebServerResources/app.js").time());
+		return;
+	}
+
+	@Test
+	public void keepsOriginalJarIfRewriteFails() throws IOException {
+		byte[] original = Files.readAllBytes(jarPath);
+
+		JarRewriter jarRewriter = new JarRewriter(jarPath);
+		jarRewriter.addString("Resources/Info.plist", "new plist");
+		jarRewriter.addFile("Resources/Missing.txt", tempDir.resolve("missing.txt"));
+		assertThrows(UncheckedIOException.class, jarRewriter::write);
+
+		assertArrayEquals(original, Files.readAllBytes(jarPath));
+		assertFalse(Files.exists(tempDir.resolve("framework.jar.vermilingua-tmp")));
+		return;
+	}
+
+	@Test
+	public void utilDelegatesToJarRewriter() throws IOException {
+		Path directory = tempDir.resolve("woresources");
+		Files.createDirectories(directory);
+		Files.writeString(directory.resolve("Properties"), "alpha=beta");
+
+		Util.copyContentsOfFolderAtPathToFolderInJar(directory, "Resources", jarPath);
+		Util.writeStringToPathInJar("new plist", "Resources/Info.plist", jarPath);
+
+		assertEquals("alpha=beta", content(jarPath, "Resources/Properties"));
+		assertEquals("new plist", content(jarPath, "Resources/Info.plist"));
+		return;
+	}
+
+	/**
+	 * An entry as stored in the jar, with it's content still compressed
+	 */
+	private record RawEntry(String name, int method, long crc, long time, byte[] rawBytes) {}
+
+	/**
+	 * @return Every entry in the jar at {@code path}, in physical order
+	 */
+	private static Map<String, RawEntry> rawEntries(Path path) throws IOException {
+		Map<String, RawEntry> entries = new LinkedHashMap<>();
+
+		try (ZipFile zipFile = ZipFile.builder().setPath(path).get()) {
+			for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+				try (InputStream in = zipFile.getRawInputStream(entry)) {
+					entries.put(entry.getName(), new RawEntry(entry.getName(), entry.getMethod(), entry.getCrc(), entry.getTime(), in.readAllBytes()));
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static String content(Path path, String name) throws IOException {
+		try (ZipFile zipFile = ZipFile.builder().setPath(path).get(); InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void putDirectory(ZipOutputStream zip, String name) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.closeEntry();
+		return;
+	}
+
+	private static void putEntry(ZipOutputStream zip, String name, String content, int method) throws IOException {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(method);
+		entry.setTime(1_700_000_000_000L);
+
+		if (method == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+
+		zip.putNextEntry(entry);
+		zip.write(bytes);
+		zip.closeEntry();
+		return;
+	}
+}
@@ -0,0 +1,116 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on {@link LinkStrategy} class.
+ */
+public class LinkStrategyTest {
+	/**
+	 * A location on a different filesystem than the temporary directory on most
+	 * Linux machines, for testing what happens when linking isn't possible
+	 */
+	private static final Path OTHER_FILESYSTEM = Path.of("/dev/shm");
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void parsesNames() {
+		assertEquals(LinkStrategy.Hardlink, LinkStrategy.of("hardlink"));
+		assertEquals(LinkStrategy.Auto, LinkStrategy.of("AUTO"));
+		assertThrows(IllegalArgumentException.class, () -> LinkStrategy.of("symlink"));
+		return;
+	}
+
+	@Test
+	public void copyCopies() throws IOException {
+		Path source = write(tempDir.resolve("source.jar"), "jar");
+		Path destination = tempDir.resolve("destination.jar");
+
+		assertTrue(LinkStrategy.Copy.apply(source, destination));
+		assertEquals("jar", Files.readString(destination));
+		assertFalse(Files.isSameFile(source, destination));
+		return;
+	}
+
+	@Test
+	public void hardlinkReplacesDestination() throws IOException {
+		Path source = write(tempDir.resolve("source.jar"), "jar");
+		Path destination = write(tempDir.resolve("destination.jar"), "old jar");
+
+		assertFalse(LinkStrategy.Hardlink.apply(source, destination));
+		assertTrue(Files.isSameFile(source, destination));
+		assertEquals("jar", Files.readString(destination));
+		return;
+	}
+
+	@Test
+	public void autoLinksWhenPossible() throws IOException {
+		Path source = write(tempDir.resolve("source.jar"), "jar");
+		Path destination = tempDir.resolve("destination.jar");
+
+		assertFalse(LinkStrategy.Auto.apply(source, destination));
+		assertTrue(Files.isSameFile(source, destination));
+		return;
+	}
+
+	@Test
+	public void autoFallsBackToCopyAcrossFilesystems() throws IOException {
+		Path destinationDirectory = otherFilesystemDirectory();
+
+		try {
+			Path source = write(tempDir.resolve("source.jar"), "jar");
+			Path destination = write(destinationDirectory.resolve("destination.jar"), "old jar");
+
+			assertTrue(LinkStrategy.Auto.apply(source, destination));
+			assertEquals("jar", Files.readString(destination));
+			assertFalse(Files.isSameFile(source, destination));
+		}
+		finally {
+			Util.deleteRecursively(destinationDirectory);
+		}
+		return;
+	}
+
+	@Test
+	public void hardlinkFailsAcrossFilesystems() throws IOException {
+		Path destinationDirectory = otherFilesystemDirectory();
+
+		try {
+			Path source = write(tempDir.resolve("source.jar"), "jar");
+			assertThrows(UncheckedIOException.class, () -> LinkStrategy.Hardlink.apply(source, destinationDirectory.resolve("destination.jar")));
+		}
+		finally {
+			Util.deleteRecursively(destinationDirectory);
+		}
+		return;
+	}
+
+	/**
+	 * @return A new directory on a different filesystem than {@code tempDir}.
+	 *         Skips the test if there's no such filesystem.
+	 */
+	private Path otherFilesystemDirectory() throws IOException {
+		assumeTrue(Files.isDirectory(OTHER_FILESYSTEM) && Files.isWritable(OTHER_FILESYSTEM), "No " + OTHER_FILESYSTEM);
+		assumeTrue(!Files.getFileStore(OTHER_FILESYSTEM).equals(Files.getFileStore(tempDir)), OTHER_FILESYSTEM + " is on the same filesystem as " + tempDir);
+		return Files.createTempDirectory(OTHER_FILESYSTEM, "vermilingua-test");
+	}
+
+	private static Path write(Path path, String content) throws IOException {
+		Files.writeString(path, content);
+		return path;
+	}
+}
@@ -0,0 +1,235 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import vermilingua.packaging.PackageWOApplication.WOA;
+import vermilingua.packaging.PackagingReport.Stage;
+import vermilingua.packaging.PackagingReport.Totals;
+
+/**
+ * Unit tests on incremental builds by {@link PackageWOApplication}. Each test
+ * builds an application, changes it's inputs and builds it again, checking
+ * which files in the WOA were rewritten and which were deleted.
+ */
+public class PackageWOApplicationTest {
+	/**
+	 * Modification time every file in the WOA is set to after the first build.
+	 * Files still carrying it after the second build weren't rewritten.
+	 */
+	private static final FileTime UNTOUCHED = FileTime.fromMillis(0);
+
+	@TempDir
+	Path tempDir;
+
+	private Path projectPath;
+	private Path frameworkJarPath;
+	private Path targetPath;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		projectPath = tempDir.resolve("project");
+		write(projectPath.resolve("build.properties"), "principalClass=app.Application\n");
+		write(projectPath.resolve("src/main/woresources/Properties"), "er.extensions.alpha=beta\n");
+		write(projectPath.resolve("src/main/woresources/Old.strings"), "{}\n");
+		write(projectPath.resolve("src/main/components/Main.wo/Main.html"), "<html/>\n");
+		write(projectPath.resolve("src/main/webserver-resources/css/app.css"), "body {}\n");
+		jar(projectPath.resolve("target/app.jar"), Map.of("app/Application.class", "class"));
+
+		frameworkJarPath = tempDir.resolve("repository/fw-1.0.jar");
+		jar(frameworkJarPath, Map.of("fw/Framework.class", "class", "WebServerResources/fw.js", "alert()", "WebServerResources/img/logo.png", "png"));
+
+		targetPath = tempDir.resolve("target");
+		return;
+	}
+
+	@Test
+	public void rebuildLeavesUnchangedFilesAlone() throws IOException {
+		WOA woa = build(LinkStrategy.Copy);
+		markUntouched(woa);
+
+		build(LinkStrategy.Copy);
+		assertEquals(List.of(), touchedFiles(woa));
+		return;
+	}
+
+	@Test
+	public void rebuildRewritesChangedAndPrunesRemovedFiles() throws IOException {
+		WOA woa = build(LinkStrategy.Copy);
+		markUntouched(woa);
+
+		write(projectPath.resolve("src/main/woresources/Properties"), "er.extensions.alpha=gamma\n");
+		Files.delete(projectPath.resolve("src/main/woresources/Old.strings"));
+		Files.delete(projectPath.resolve("src/main/webserver-resources/css/app.css"));
+		build(LinkStrategy.Copy);
+
+		assertEquals(List.of(woa.woresourcesPath().resolve("Properties")), touchedFiles(woa));
+		assertEquals("er.extensions.alpha=gamma\n", Files.readString(woa.woresourcesPath().resolve("Properties")));
+		assertFalse(Files.exists(woa.woresourcesPath().resolve("Old.strings")));
+		assertFalse(Files.exists(woa.webserverResourcesPath().resolve("css")));
+		assertTrue(Files.exists(woa.webserverResourcesPath()));
+		return;
+	}
+
+	@Test
+	public void rebuildReextractsChangedFrameworkJar() throws IOException {
+		WOA woa = build(LinkStrategy.Copy);
+		Path frameworkPath = woa.frameworksPath().resolve("fw.framework/WebServerResources");
+		assertTrue(Files.exists(frameworkPath.resolve("img/logo.png")));
+		markUntouched(woa);
+
+		// The new version of the framework no longer contains the image
+		jar(frameworkJarPath, Map.of("fw/Framework.class", "class", "WebServerResources/fw.js", "alert( 'new' )"));
+		build(LinkStrategy.Copy);
+
+		assertEquals("alert( 'new' )", Files.readString(frameworkPath.resolve("fw.js")));
+		assertFalse(Files.exists(frameworkPath.resolve("img")));
+		assertTrue(touchedFiles(woa).contains(woa.dependencyPath(frameworkDependency())));
+		assertTrue(touchedFiles(woa).contains(frameworkPath.resolve("fw.js")));
+		return;
+	}
+
+	@Test
+	public void rebuildKeepsLinkedDependencies() throws IOException {
+		WOA woa = build(LinkStrategy.Hardlink);
+		Path dependencyPath = woa.dependencyPath(frameworkDependency());
+		assertTrue(Files.isSameFile(frameworkJarPath, dependencyPath));
+
+		build(LinkStrategy.Hardlink);
+		assertTrue(Files.isSameFile(frameworkJarPath, dependencyPath));
+		return;
+	}
+
+	@Test
+	public void firstIncrementalBuildPrunesFilesWithoutSource() throws IOException {
+		WOA woa = new PackageWOApplication(options(false, LinkStrategy.Copy)).execute(sourceProject(), "App", targetPath);
+		assertFalse(Files.exists(woa.woaPath().resolve(WOAManifest.FILENAME)));
+
+		Files.delete(projectPath.resolve("src/main/woresources/Old.strings"));
+		build(LinkStrategy.Copy);
+		assertTrue(Files.exists(woa.woaPath().resolve(WOAManifest.FILENAME)));
+		assertFalse(Files.exists(woa.woresourcesPath().resolve("Old.strings")));
+		assertTrue(Files.exists(woa.woresourcesPath().resolve("Main.wo/Main.html")));
+		return;
+	}
+
+	@Test
+	public void configOnlyNamesCDSArchiveWhenTraining() throws IOException {
+		WOA woa = build(LinkStrategy.Copy);
+		assertFalse(Files.readString(woa.woaPath().resolve("config.txt")).contains("cdsArchive"));
+		return;
+	}
+
+	@Test
+	public void extractsFrameworkJarsInSinglePassWithoutCache() {
+		PackagingReport report = new PackagingReport();
+		new PackageWOApplication(options(false, LinkStrategy.Copy, report)).execute(sourceProject(), "App", targetPath);
+		assertEquals(1, jarsOpened(report, Stage.WebServerResourceExtraction));
+
+		report = new PackagingReport();
+		new PackageWOApplication(options(false, LinkStrategy.Copy, report)).executeToArchive(sourceProject(), "App", targetPath.resolve("App.tar.gz"), null, ArchiveFormat.TarGz, ArchiveWriter.Settings.defaults());
+		assertEquals(1, jarsOpened(report, Stage.WebServerResourceExtraction));
+		return;
+	}
+
+	private WOA build(LinkStrategy linkStrategy) {
+		return new PackageWOApplication(options(true, linkStrategy)).execute(sourceProject(), "App", targetPath);
+	}
+
+	private static PackagingOptions options(boolean incremental, LinkStrategy linkStrategy) {
+		return options(incremental, linkStrategy, new PackagingReport());
+	}
+
+	private static PackagingOptions options(boolean incremental, LinkStrategy linkStrategy, PackagingReport report) {
+		return new PackagingOptions(incremental, false, linkStrategy, 1, false, false, 0, false, false, false, false, null, null, report, new JarCache(0), null);
+	}
+
+	private SourceProject sourceProject() {
+		return new SourceProject(
+				SourceProject.Type.Application,
+				"App",
+				"1.0",
+				projectPath.resolve("src/main/woresources"),
+				projectPath.resolve("src/main/components"),
+				projectPath.resolve("src/main/webserver-resources"),
+				projectPath.resolve("target/app.jar"),
+				"app.Application",
+				List.of(frameworkDependency()),
+				BuildProperties.of(projectPath));
+	}
+
+	private Dependency frameworkDependency() {
+		return new Dependency("org.example", "fw", "1.0", frameworkJarPath.toFile());
+	}
+
+	/**
+	 * Sets the modification time of every file in the WOA to {@code UNTOUCHED}
+	 */
+	private static void markUntouched(WOA woa) throws IOException {
+		for (Path path : files(woa)) {
+			Files.setLastModifiedTime(path, UNTOUCHED);
+		}
+		return;
+	}
+
+	/**
+	 * @return Files in the WOA written since {@code markUntouched()}, apart from
+	 *         the manifest (which is always written)
+	 */
+	private static List<Path> touchedFiles(WOA woa) throws IOException {
+		return files(woa).stream().filter(path -> {
+			try {
+				return !Files.getLastModifiedTime(path).equals(UNTOUCHED);
+			}
+			catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}).filter(path -> !path.getFileName().toString().equals(WOAManifest.FILENAME)).toList();
+	}
+
+	private static long jarsOpened(PackagingReport report, Stage stage) {
+		return report.totals().stream().filter(totals -> totals.stage() == stage).mapToLong(Totals::jarsOpened).sum();
+	}
+
+	private static List<Path> files(WOA woa) throws IOException {
+		try (Stream<Path> paths = Files.walk(woa.woaPath())) {
+			return paths.filter(Files::isRegularFile).sorted().toList();
+		}
+	}
+
+	private static void write(Path path, String content) throws IOException {
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, content);
+		return;
+	}
+
+	private static void jar(Path path, Map<String, String> entries) throws IOException {
+		Files.createDirectories(path.getParent());
+
+		try (OutputStream out = Files.newOutputStream(path); JarOutputStream jar = new JarOutputStream(out)) {
+			for (String name : entries.keySet().stream().sorted().toList()) {
+				jar.putNextEntry(new JarEntry(name));
+				jar.write(entries.get(name).getBytes(StandardCharsets.UTF_8));
+				jar.closeEntry();
+			}
+		}
+		return;
+	}
+}
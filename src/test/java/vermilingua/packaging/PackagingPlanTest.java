@@ -0,0 +1,107 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import vermilingua.packaging.PackagingPlan.CopyFile;
+import vermilingua.packaging.PackagingPlan.Operation;
+import vermilingua.packaging.PackagingPlan.WriteString;
+
+/**
+ * Unit tests on {@link PackagingPlan} class.
+ */
+public class PackagingPlanTest {
+	private static final Path WOA = Path.of("/build/App.woa");
+
+	@Test
+	public void mergesIdenticalOperations() {
+		PackagingPlan plan = new PackagingPlan();
+		plan.add(copy("a.txt", "a.txt"));
+		plan.add(copy("a.txt", "a.txt"));
+		assertEquals(List.of(copy("a.txt", "a.txt")), plan.operations());
+		return;
+	}
+
+	@Test
+	public void keepsCollidingOperationsInOrder() {
+		PackagingPlan plan = new PackagingPlan();
+		plan.add(copy("first/a.txt", "a.txt"));
+		plan.add(copy("second/a.txt", "a.txt"));
+		plan.add(copy("b.txt", "b.txt"));
+		assertEquals(List.of(copy("first/a.txt", "a.txt"), copy("second/a.txt", "a.txt"), copy("b.txt", "b.txt")), plan.operations());
+		return;
+	}
+
+	@Test
+	public void executesInDestinationOrder() {
+		PackagingPlan plan = new PackagingPlan();
+		plan.add(copy("c.txt", "c.txt"));
+		plan.add(new WriteString("a", WOA.resolve("a.txt"), false));
+		plan.add(copy("b.txt", "Contents/b.txt"));
+
+		List<Path> destinations = new ArrayList<>();
+		plan.executeInDestinationOrder(operation -> destinations.add(operation.destination()));
+		assertEquals(List.of(WOA.resolve("Contents/b.txt"), WOA.resolve("a.txt"), WOA.resolve("c.txt")), destinations);
+		return;
+	}
+
+	@Test
+	public void executesEveryOperationOnMultipleThreads() {
+		PackagingPlan plan = new PackagingPlan();
+
+		for (int i = 0; i < 200; i++) {
+			plan.add(copy("file" + i, "file" + i));
+		}
+
+		List<Operation> performed = Collections.synchronizedList(new ArrayList<>());
+		plan.execute(4, performed::add);
+		assertEquals(200, performed.size());
+		assertEquals(new HashSet<>(plan.operations()), new HashSet<>(performed));
+		return;
+	}
+
+	@Test
+	public void executesCollidingOperationsInSequence() {
+		PackagingPlan plan = new PackagingPlan();
+
+		for (int i = 0; i < 50; i++) {
+			plan.add(copy("first/file" + i, "file" + i));
+			plan.add(copy("second/file" + i, "file" + i));
+		}
+
+		// The last source written to each destination must be the one added last, like when executing on a single thread
+		Map<Path, Path> lastSources = new ConcurrentHashMap<>();
+		plan.execute(4, operation -> lastSources.put(operation.destination(), ((CopyFile) operation).source()));
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals(Path.of("/source/second/file" + i), lastSources.get(WOA.resolve("file" + i)));
+		}
+		return;
+	}
+
+	@Test
+	public void rethrowsFailures() {
+		PackagingPlan plan = new PackagingPlan();
+		plan.add(copy("a.txt", "a.txt"));
+		plan.add(copy("b.txt", "b.txt"));
+
+		assertThrows(IllegalStateException.class, () -> plan.execute(2, operation -> {
+			throw new IllegalStateException("Failed writing " + operation.destination());
+		}));
+		return;
+	}
+
+	private static CopyFile copy(String source, String destination) {
+		return new CopyFile(Path.of("/source").resolve(source), WOA.resolve(destination), false);
+	}
+}
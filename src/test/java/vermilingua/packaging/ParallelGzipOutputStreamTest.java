@@ -0,0 +1,161 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on {@link ParallelGzipOutputStream} class. Everything compressed
+ * must inflate with the JDK's gzip implementation to exactly the input, as a
+ * single gzip member with a correct trailer.
+ */
+public class ParallelGzipOutputStreamTest {
+	private static final int BLOCK_SIZE = ParallelGzipOutputStream.BLOCK_SIZE;
+
+	@Test
+	public void canCompressEmptyInput() throws IOException {
+		assertRoundTrip(new byte[0], 4, -1);
+		return;
+	}
+
+	@Test
+	public void canCompressSingleByte() throws IOException {
+		assertRoundTrip(new byte[] { 42 }, 4, -1);
+		return;
+	}
+
+	@Test
+	public void canCompressExactlyOneBlock() throws IOException {
+		assertRoundTrip(text(BLOCK_SIZE), 4, -1);
+		return;
+	}
+
+	@Test
+	public void canCompressAcrossBlockBoundaries() throws IOException {
+		for (int length : new int[] { BLOCK_SIZE - 1, BLOCK_SIZE + 1, 2 * BLOCK_SIZE, 5 * BLOCK_SIZE + 12345 }) {
+			assertRoundTrip(text(length), 4, -1);
+		}
+		return;
+	}
+
+	@Test
+	public void canCompressIncompressibleInput() throws IOException {
+		byte[] bytes = new byte[3 * BLOCK_SIZE + 1];
+		new Random(42).nextBytes(bytes);
+		assertRoundTrip(bytes, 4, 9);
+		assertRoundTrip(bytes, 2, 0);
+		return;
+	}
+
+	@Test
+	public void canCompressOnSingleThread() throws IOException {
+		assertRoundTrip(text(3 * BLOCK_SIZE + 7), 1, 6);
+		return;
+	}
+
+	@Test
+	public void canCompressSingleByteWrites() throws IOException {
+		byte[] bytes = text(BLOCK_SIZE + 100);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 3, -1)) {
+			for (byte b : bytes) {
+				out.write(b);
+			}
+		}
+
+		assertValidGzip(bytes, compressed.toByteArray());
+		return;
+	}
+
+	/**
+	 * Lines repeating with variations, which compress roughly like markup does.
+	 * Matches across blocks are only found through the dictionary carried over
+	 * from the previous block.
+	 */
+	private static byte[] text(int length) {
+		byte[] bytes = new byte[length];
+		Random random = new Random(length);
+		String[] words = { "<div>", "</div>", "<wo:string value = \"$name\" />", "public ", "return ", ";\n" };
+		int i = 0;
+
+		while (i < length) {
+			byte[] word = words[random.nextInt(words.length)].getBytes();
+			int count = Math.min(word.length, length - i);
+			System.arraycopy(word, 0, bytes, i, count);
+			i += count;
+		}
+		return bytes;
+	}
+
+	private static void assertRoundTrip(byte[] bytes, int threads, int level) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, threads, level)) {
+			// Written in uneven chunks, so chunks straddle block boundaries
+			for (int offset = 0; offset < bytes.length; offset += 50_000) {
+				out.write(bytes, offset, Math.min(50_000, bytes.length - offset));
+			}
+		}
+
+		assertValidGzip(bytes, compressed.toByteArray());
+		return;
+	}
+
+	/**
+	 * Checks that {@code gzip} inflates to {@code expected} using
+	 * GZIPInputStream, that it's a single deflate stream ending exactly where the
+	 * trailer starts, and that the trailer holds the CRC-32 and length of
+	 * {@code expected}
+	 */
+	private static void assertValidGzip(byte[] expected, byte[] gzip) throws IOException {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+			assertArrayEquals(expected, in.readAllBytes(), "Inflated content");
+		}
+
+		Inflater inflater = new Inflater(true);
+
+		try {
+			inflater.setInput(Arrays.copyOfRange(gzip, 10, gzip.length - 8));
+			byte[] inflated = new byte[expected.length];
+			int length = 0;
+
+			while (!inflater.finished()) {
+				int count = inflater.inflate(inflated, length, inflated.length - length);
+				assertTrue(count > 0 || inflater.finished(), "Deflate stream ends prematurely");
+				length += count;
+			}
+
+			assertEquals(expected.length, length);
+			assertEquals(0, inflater.getRemaining(), "Bytes between deflate stream and trailer");
+		}
+		catch (DataFormatException e) {
+			throw new AssertionError(e);
+		}
+		finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(expected);
+		ByteBuffer trailer = ByteBuffer.wrap(gzip, gzip.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals((int) crc.getValue(), trailer.getInt(), "CRC-32");
+		assertEquals(expected.length, trailer.getInt(), "ISIZE");
+		return;
+	}
+}
@@ -1,9 +1,14 @@
 package vermilingua.packaging;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +29,12 @@ public class PlistSerializationTest extends AbstractTest {
 	private static final String MAP_STRING_STRING_PLIST = "plists/mapStringString.plist";
 	private static Map<String, String> mapStringString;
 
+	private static final String MAP_VALUE_TYPES_PLIST = "plists/mapValueTypes.plist";
+	private static Map<String, Object> mapValueTypes;
+
+	private static final String MAP_ESCAPING_PLIST = "plists/mapEscaping.plist";
+	private static Map<String, String> mapEscaping;
+
 	@BeforeEach
 	public void setup() {
 		listString = new ArrayList<>();
@@ -34,6 +45,20 @@ public class PlistSerializationTest extends AbstractTest {
 		mapStringString = new HashMap<>();
 		mapStringString.put("alpha", "beta");
 		mapStringString.put("gamma", "delta");
+
+		mapValueTypes = new LinkedHashMap<>();
+		mapValueTypes.put("integer", 42);
+		mapValueTypes.put("long", 9007199254740993L);
+		mapValueTypes.put("real", 3.25);
+		mapValueTypes.put("date", Instant.parse("2026-04-21T13:37:00.500Z"));
+		mapValueTypes.put("data", "Vermilingua".getBytes(StandardCharsets.UTF_8));
+		mapValueTypes.put("enabled", true);
+		mapValueTypes.put("disabled", false);
+		mapValueTypes.put("empty", List.of());
+		mapValueTypes.put("missing", null);
+
+		mapEscaping = new LinkedHashMap<>();
+		mapEscaping.put("R&D <Department>", "Tom & Jerry > \u00de\u00f3r\u00f0ur");
 		return;
 	}
 
@@ -49,6 +74,32 @@ public class PlistSerializationTest extends AbstractTest {
 		return;
 	}
 
+	@Test
+	public void canSerializeMapValueTypes() {
+		comparePlistSerializationToFile(mapValueTypes, MAP_VALUE_TYPES_PLIST);
+		return;
+	}
+
+	@Test
+	public void canEscapeKeysAndStrings() {
+		comparePlistSerializationToFile(mapEscaping, MAP_ESCAPING_PLIST);
+		return;
+	}
+
+	@Test
+	public void canWriteToOutputStream() {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		new PlistSerialization(mapEscaping).writeTo(stream);
+		assertEquals(new String(stream.toByteArray(), StandardCharsets.UTF_8), testResourceAsString(MAP_ESCAPING_PLIST));
+		return;
+	}
+
+	@Test
+	public void rejectsControlCharacters() {
+		assertThrows(IllegalArgumentException.class, () -> new PlistSerialization(List.of("alpha\u0000")).toString());
+		return;
+	}
+
 	/**
 	 * Compares the serialization of {@code object} to the expected result in
 	 * {@code filename}.
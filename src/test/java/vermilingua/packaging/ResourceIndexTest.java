@@ -0,0 +1,56 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import vermilingua.packaging.JarCache.FileEntry;
+import vermilingua.packaging.JarCache.Scan;
+import vermilingua.packaging.ResourceIndex.Entry;
+
+/**
+ * Unit tests on {@link ResourceIndex} class.
+ */
+public class ResourceIndexTest {
+	@Test
+	public void ordersEntriesByBundleInTheOrderBundlesWereAdded() {
+		ResourceIndex index = new ResourceIndex();
+		index.addJar("app", scan("Resources/a.txt", "Resources/b.txt"));
+		index.addJar("first", scan("Resources/c.txt"));
+
+		// Shares it's name with the first resource added, but must still come after the bundle added before it
+		index.addJar("second", scan("Resources/a.txt"));
+
+		assertEquals(List.of("app", "app", "first", "second"), index.entries().stream().map(Entry::bundle).toList());
+		return;
+	}
+
+	@Test
+	public void replacingResourceKeepsLookupOrder() {
+		ResourceIndex index = new ResourceIndex();
+		index.addJar("app", scan("Resources/a.txt"));
+		index.addJar("framework", scan("Resources/a.txt"));
+		index.addJar("app", scan("Resources/a.txt"));
+
+		List<List<Entry>> duplicates = index.duplicates();
+		assertEquals(1, duplicates.size());
+		assertEquals(List.of("app", "framework"), duplicates.get(0).stream().map(Entry::bundle).toList());
+		return;
+	}
+
+	@Test
+	public void separatesLocalizedResources() {
+		ResourceIndex index = new ResourceIndex();
+		index.addJar("app", scan("Resources/English.lproj/Localizable.strings", "Resources/Localizable.strings"));
+
+		assertEquals(List.of(new Entry("Localizable.strings", "", "app", 1, 0), new Entry("Localizable.strings", "English", "app", 1, 0)), index.entries());
+		assertEquals(List.of(), index.duplicates());
+		return;
+	}
+
+	private static Scan scan(String... names) {
+		return new Scan(List.of(names).stream().map(name -> new FileEntry(name, 1, 0)).toList());
+	}
+}
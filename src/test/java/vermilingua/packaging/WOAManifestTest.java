@@ -0,0 +1,263 @@
+package vermilingua.packaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests on {@link WOAManifest} class. Each test performs a build into a
+ * WOA folder, changes something and performs another build, checking what got
+ * copied and what got deleted.
+ */
+public class WOAManifestTest {
+	@TempDir
+	Path tempDir;
+
+	private Path sourcePath;
+	private Path woaPath;
+
+	/**
+	 * Destinations copied during the current build
+	 */
+	private List<Path> copied;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		sourcePath = Files.createDirectories(tempDir.resolve("source"));
+		woaPath = Files.createDirectories(tempDir.resolve("App.woa"));
+		copied = new ArrayList<>();
+		return;
+	}
+
+	@Test
+	public void skipsUpToDateCopies() throws IOException {
+		Path source = write("Main.html", "<html/>");
+
+		build(false, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+
+		build(false, source);
+		assertEquals(List.of(), copied);
+		return;
+	}
+
+	@Test
+	public void copiesChangedSources() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(false, source);
+
+		write("Main.html", "<html></html>");
+		build(false, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+		assertEquals("<html></html>", Files.readString(woaPath.resolve("Main.html")));
+		return;
+	}
+
+	@Test
+	public void copiesMissingDestinations() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(false, source);
+
+		Files.delete(woaPath.resolve("Main.html"));
+		build(false, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+		return;
+	}
+
+	@Test
+	public void copiesTouchedSourcesWithoutChecksums() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(false, source);
+
+		touch(source);
+		build(false, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+		return;
+	}
+
+	@Test
+	public void skipsTouchedSourcesWithChecksums() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(true, source);
+
+		touch(source);
+		build(true, source);
+		assertEquals(List.of(), copied);
+
+		// The hash recorded for the touched source is still valid for the build after that
+		build(true, source);
+		assertEquals(List.of(), copied);
+		return;
+	}
+
+	@Test
+	public void copiesChangedContentOfSameSizeWithChecksums() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(true, source);
+
+		write("Main.html", "<HTML/>");
+		touch(source);
+		build(true, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+		return;
+	}
+
+	@Test
+	public void prunesFilesWithoutSource() throws IOException {
+		Path kept = write("Main.html", "<html/>");
+		Path removed = write("Nested/Folder/Old.html", "<html/>");
+		build(false, kept, removed);
+
+		WOAManifest manifest = WOAManifest.load(woaPath, false);
+		copy(manifest, kept);
+		assertEquals(1, manifest.pruneStaleFiles());
+		manifest.write();
+
+		assertTrue(Files.exists(woaPath.resolve("Main.html")));
+		assertFalse(Files.exists(woaPath.resolve("Nested")));
+		assertTrue(Files.exists(woaPath.resolve(WOAManifest.FILENAME)));
+		assertEquals(Set.of("Main.html"), manifest.entries().keySet());
+		return;
+	}
+
+	@Test
+	public void leavesIdenticalGeneratedFilesAlone() throws IOException {
+		WOAManifest manifest = WOAManifest.load(woaPath, false);
+		assertTrue(manifest.writeString("alpha", woaPath.resolve("config.txt")));
+		assertFalse(manifest.writeString("alpha", woaPath.resolve("config.txt")));
+		assertTrue(manifest.writeString("beta", woaPath.resolve("config.txt")));
+		assertEquals("beta", Files.readString(woaPath.resolve("config.txt")));
+		return;
+	}
+
+	@Test
+	public void carriesOverExtractedFiles() throws IOException {
+		Path jar = write("framework.jar", "jar content");
+		Path extracted = extract(jar, "WebServerResources/app.js", "WebServerResources/img/logo.png");
+
+		// Unchanged jar, all extracted files present
+		WOAManifest manifest = WOAManifest.load(woaPath, false);
+		assertTrue(manifest.carryOverIfUpToDate(jar));
+		assertEquals(Set.of("WebServerResources/app.js", "WebServerResources/img/logo.png"), manifest.entries().keySet());
+		assertEquals(0, manifest.pruneStaleFiles());
+		assertTrue(Files.exists(extracted));
+		return;
+	}
+
+	@Test
+	public void doesNotCarryOverExtractedFilesOfChangedJar() throws IOException {
+		Path jar = write("framework.jar", "jar content");
+		extract(jar, "WebServerResources/app.js", "WebServerResources/img/logo.png");
+
+		write("framework.jar", "new jar content");
+		WOAManifest manifest = WOAManifest.load(woaPath, false);
+		assertFalse(manifest.carryOverIfUpToDate(jar));
+
+		// The new version of the jar no longer contains the image
+		Files.writeString(woaPath.resolve("WebServerResources/app.js"), "app");
+		manifest.recordExtracted(jar, List.of(woaPath.resolve("WebServerResources/app.js")));
+		assertEquals(1, manifest.pruneStaleFiles());
+		assertFalse(Files.exists(woaPath.resolve("WebServerResources/img")));
+		return;
+	}
+
+	@Test
+	public void doesNotCarryOverMissingExtractedFiles() throws IOException {
+		Path jar = write("framework.jar", "jar content");
+		Path extracted = extract(jar, "WebServerResources/app.js", "WebServerResources/img/logo.png");
+
+		Files.delete(extracted);
+		assertFalse(WOAManifest.load(woaPath, false).carryOverIfUpToDate(jar));
+		return;
+	}
+
+	@Test
+	public void ignoresBrokenManifest() throws IOException {
+		Path source = write("Main.html", "<html/>");
+		build(false, source);
+
+		Files.writeString(woaPath.resolve(WOAManifest.FILENAME), "Main.html\tbroken\tx\ty\t\n");
+		build(false, source);
+		assertEquals(List.of(woaPath.resolve("Main.html")), copied);
+		return;
+	}
+
+	/**
+	 * Performs a build copying each of {@code sources} to the same relative
+	 * location in the WOA, pruning and writing the manifest like
+	 * PackageWOApplication does.
+	 */
+	private void build(boolean checksums, Path... sources) {
+		copied.clear();
+		WOAManifest manifest = WOAManifest.load(woaPath, checksums);
+
+		for (Path source : sources) {
+			copy(manifest, source);
+		}
+
+		manifest.pruneStaleFiles();
+		manifest.write();
+		return;
+	}
+
+	private void copy(WOAManifest manifest, Path source) {
+		Path destination = woaPath.resolve(sourcePath.relativize(source).toString());
+		manifest.copyFile(source, destination, (s, d) -> {
+			Util.createParentDirectories(d);
+			Util.copyFile(s, d, StandardCopyOption.REPLACE_EXISTING);
+			copied.add(d);
+		});
+		return;
+	}
+
+	/**
+	 * Performs a build that extracts {@code names} from {@code jar}
+	 *
+	 * @return the path of the last extracted file
+	 */
+	private Path extract(Path jar, String... names) throws IOException {
+		WOAManifest manifest = WOAManifest.load(woaPath, false);
+		List<Path> paths = new ArrayList<>();
+
+		for (String name : names) {
+			Path path = woaPath.resolve(name);
+			Files.createDirectories(path.getParent());
+			Files.writeString(path, name);
+			paths.add(path);
+		}
+
+		manifest.recordExtracted(jar, paths);
+		manifest.write();
+		return paths.get(paths.size() - 1);
+	}
+
+	private Path write(String name, String content) throws IOException {
+		Path path = sourcePath.resolve(name);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, content);
+		return path;
+	}
+
+	/**
+	 * Changes the modification time of {@code path} without changing it's
+	 * content, like a fresh checkout does
+	 */
+	private static void touch(Path path) throws IOException {
+		FileTime lastModified = Files.getLastModifiedTime(path);
+		Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 60_000));
+		return;
+	}
+}